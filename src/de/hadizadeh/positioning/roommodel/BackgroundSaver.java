@@ -0,0 +1,146 @@
+package de.hadizadeh.positioning.roommodel;
+
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs saves on a background executor. Saves of the same target (e.g. the same file) run one after another. A save
+ * which is still waiting when a newer save of the same target is submitted is replaced by the newer save, both
+ * callers get the same future.
+ */
+public class BackgroundSaver {
+    protected ExecutorService executor;
+    protected java.util.Map<String, SaveTask> runningTasks;
+    protected java.util.Map<String, SaveTask> queuedTasks;
+
+    /**
+     * Creates a saver with one daemon thread
+     */
+    public BackgroundSaver() {
+        this(Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "room model saver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+    /**
+     * Creates a saver which runs the saves on an executor
+     *
+     * @param executor executor of the saves
+     */
+    public BackgroundSaver(ExecutorService executor) {
+        this.executor = executor;
+        runningTasks = new HashMap<String, SaveTask>();
+        queuedTasks = new HashMap<String, SaveTask>();
+    }
+
+    /**
+     * Submits a save of a target
+     *
+     * @param target name of the saved target, e.g. the filename
+     * @param save   save
+     * @return future which is done when the save or a newer save of the target has finished
+     */
+    public synchronized Future<Void> submit(String target, Save save) {
+        SaveTask queuedTask = queuedTasks.get(target);
+        if (queuedTask != null) {
+            queuedTask.replace(save);
+            return queuedTask;
+        }
+        SaveTask task = new SaveTask(target, save);
+        if (runningTasks.containsKey(target)) {
+            queuedTasks.put(target, task);
+        } else {
+            start(task);
+        }
+        return task;
+    }
+
+    /**
+     * Stops the executor after all submitted saves have finished
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    protected void start(SaveTask task) {
+        runningTasks.put(task.target, task);
+        executor.execute(task);
+    }
+
+    protected synchronized void finished(SaveTask task) {
+        if (runningTasks.get(task.target) == task) {
+            runningTasks.remove(task.target);
+            SaveTask nextTask = queuedTasks.remove(task.target);
+            if (nextTask != null) {
+                start(nextTask);
+            }
+        } else if (queuedTasks.get(task.target) == task) {
+            queuedTasks.remove(task.target);
+        }
+    }
+
+    /**
+     * Save of a target
+     */
+    public abstract static class Save implements Callable<Void> {
+        /**
+         * Is called instead of call, if a newer save of the same target replaces this save before it has started,
+         * e.g. to pass changes on to the newer save or to release a snapshot
+         *
+         * @param newerSave save which replaces this save
+         */
+        protected void replacedBy(Save newerSave) {
+        }
+    }
+
+    /**
+     * Holds the current save of a task, which may be replaced until the task is started
+     */
+    protected static class SaveSlot implements Callable<Void> {
+        protected volatile Save save;
+
+        protected SaveSlot(Save save) {
+            this.save = save;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            return save.call();
+        }
+    }
+
+    protected class SaveTask extends FutureTask<Void> {
+        protected String target;
+        protected SaveSlot slot;
+
+        protected SaveTask(String target, Save save) {
+            this(target, new SaveSlot(save));
+        }
+
+        protected SaveTask(String target, SaveSlot slot) {
+            super(slot);
+            this.target = target;
+            this.slot = slot;
+        }
+
+        protected void replace(Save newerSave) {
+            slot.save.replacedBy(newerSave);
+            slot.save = newerSave;
+        }
+
+        @Override
+        protected void done() {
+            finished(this);
+        }
+    }
+}
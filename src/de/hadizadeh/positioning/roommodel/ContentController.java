@@ -11,14 +11,23 @@ import de.hadizadeh.positioning.roommodel.model.ContentElement;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Controls the loading process and actions with content elements and content groups
@@ -28,6 +37,14 @@ public class ContentController {
      * Defines the size of a content group
      */
     protected final int CONTENTS_PER_ELEMENT = 7;
+    /**
+     * Amount of content elements whose files are read by one task of a parallel preload
+     */
+    protected static final int PRELOAD_BATCH_ELEMENTS = 16;
+    /**
+     * Maximum amount of threads of the default media executor
+     */
+    protected static final int MAX_MEDIA_THREADS = 4;
     /**
      * Default language
      */
@@ -37,9 +54,24 @@ public class ContentController {
     protected java.util.Map<String, List<ContentElement>> contentElements;
     protected String currentLanguage;
     protected int currentContentIndex;
+    protected BackgroundSaver backgroundSaver;
+    protected ContentPositionIndex positionIndex;
+    protected boolean positionIndexOutdated = true;
+    protected ContentTextCache textCache;
+    protected ExecutorService preloadExecutor;
+    protected File savedContentPath;
+    protected java.util.Map<Integer, List<String>> savedStructure;
+    protected ExecutorService mediaExecutor;
+    protected volatile boolean mediaLinking;
+    protected java.util.Map<File, File> failedMediaTransfers = new LinkedHashMap<File, File>();
+    protected java.util.Map<File, Throwable> mediaTransferErrors = new LinkedHashMap<File, Throwable>();
+    protected java.util.Map<String, List<ContentElement>> unsavedContentElements;
+    protected Exception saveError;
 
     /**
-     * Loads all contents to a map. Should be called in a thread.
+     * Loads all contents to a map. Should be called in a thread. If a text cache is set, only the structure of the
+     * contents is loaded, their texts are read through the cache when they are requested. If a preload executor is
+     * set, the files are read by its threads, the loaded contents are the same as without executor.
      *
      * @param workingDir directory where the content is stored
      * @throws ContentPersistenceException if the content could not be loaded
@@ -50,6 +82,9 @@ public class ContentController {
 
         languages = new ArrayList<String>();
         mappedContentManager = null;
+        if (textCache != null) {
+            textCache.clear();
+        }
         if (new File(contentDir).exists()) {
             mappedContentManager = new MappedContentManager(new File(workingDir, "content.xml"));
             for (File file : (new File(contentDir)).listFiles()) {
@@ -64,6 +99,13 @@ public class ContentController {
 
         if (mappedContentManager != null) {
             ContentList<Content> contents = mappedContentManager.getAllContents();
+            java.util.Map<String, List<ContentFile>> contentFiles = null;
+            if (preloadExecutor != null) {
+                contentFiles = new HashMap<String, List<ContentFile>>();
+                for (String language : languages) {
+                    contentFiles.put(language, new ArrayList<ContentFile>());
+                }
+            }
             int index = 0;
             ContentElement contentElement = null;
             for (Content content : contents) {
@@ -74,34 +116,149 @@ public class ContentController {
                     if (index % CONTENTS_PER_ELEMENT == 0) {
                         ContentElement element = new ContentElement();
                         element.setContentNumber(index / CONTENTS_PER_ELEMENT + 1);
+                        element.setTextSource(textCache);
                         element.setPositions(content.getPositions());
                         contentElements.get(language).add(element);
                     }
                     contentElement = contentElements.get(language).get(index / (CONTENTS_PER_ELEMENT));
-                    Content.ContentType contentType = content.getType();
-                    String contentData = content.getData();
                     String languagePath = contentDir + File.separator + language + File.separator;
-                    if (contentType.equals(Content.ContentType.TEXTFILE) && contentData.contains("-title")) {
-                        contentElement.setTitle(FileManager.readTextFile(languagePath + contentData));
-                    } else if (contentType.equals(Content.ContentType.TEXTFILE)) {
-                        contentElement.setDescription(FileManager.readTextFile(languagePath + contentData));
-                    } else if (contentType.equals(Content.ContentType.URL)) {
-                        contentElement.setUrl(FileManager.readTextFile(languagePath + contentData));
-                    } else if (contentType.equals(Content.ContentType.AUDIO)) {
-                        contentElement.setAudioFile(new File(languagePath + contentData));
-                    } else if (contentType.equals(Content.ContentType.MOVIE)) {
-                        contentElement.setVideoFile(new File(languagePath + contentData));
-                    } else if (contentType.equals(Content.ContentType.IMAGE)) {
-                        contentElement.setImageFile(new File(languagePath + contentData));
-                    } else if (contentType.equals(Content.ContentType.HTML_TEXTFILE)) {
-                        contentElement.setFullText(FileManager.readTextFile(languagePath + contentData));
+                    if (contentFiles != null) {
+                        contentFiles.get(language).add(new ContentFile(contentElement, content.getType(), languagePath, content.getData()));
+                    } else {
+                        loadContent(contentElement, content.getType(), languagePath, content.getData());
                     }
                 }
                 index++;
             }
+            if (contentFiles != null) {
+                loadContentFiles(contentFiles);
+            }
+            for (List<ContentElement> elements : contentElements.values()) {
+                for (ContentElement element : elements) {
+                    element.clearChanges();
+                }
+            }
+            savedContentPath = new File(contentDir).getAbsoluteFile();
+            savedStructure = getStructure(contentElements);
+        } else {
+            savedContentPath = null;
+            savedStructure = null;
+        }
+        positionIndex = createPositionIndex();
+        positionIndexOutdated = false;
+    }
+
+    /**
+     * Reads the files of the contents in batches on the preload executor. The files of a content element are always
+     * read by the same batch in their original order, so each element gets the same data as with a sequential preload.
+     *
+     * @param contentFiles files of the contents by language
+     * @throws ContentPersistenceException if a file could not be loaded
+     */
+    protected void loadContentFiles(java.util.Map<String, List<ContentFile>> contentFiles) throws ContentPersistenceException {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        int batchSize = PRELOAD_BATCH_ELEMENTS * CONTENTS_PER_ELEMENT;
+        for (List<ContentFile> files : contentFiles.values()) {
+            for (int start = 0; start < files.size(); start += batchSize) {
+                final List<ContentFile> batch = files.subList(start, Math.min(start + batchSize, files.size()));
+                futures.add(preloadExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (ContentFile file : batch) {
+                            loadContent(file.contentElement, file.contentType, file.languagePath, file.contentData);
+                        }
+                    }
+                }));
+            }
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ContentPersistenceException("Loading of the contents has been interrupted");
+        } catch (ExecutionException e) {
+            throw new ContentPersistenceException("Contents could not be loaded: " + e.getCause());
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Loads a file of a content into its content element
+     *
+     * @param contentElement content element
+     * @param contentType    type of the content
+     * @param languagePath   directory of the language
+     * @param contentData    file name of the content
+     */
+    protected void loadContent(ContentElement contentElement, Content.ContentType contentType, String languagePath, String contentData) {
+        if (textCache != null && contentType.equals(Content.ContentType.TEXTFILE) && contentData.contains("-title")) {
+            contentElement.setTitleFile(languagePath + contentData);
+        } else if (textCache != null && contentType.equals(Content.ContentType.TEXTFILE)) {
+            contentElement.setDescriptionFile(languagePath + contentData);
+        } else if (textCache != null && contentType.equals(Content.ContentType.URL)) {
+            contentElement.setUrlFile(languagePath + contentData);
+        } else if (textCache != null && contentType.equals(Content.ContentType.HTML_TEXTFILE)) {
+            contentElement.setFullTextFile(languagePath + contentData);
+        } else if (contentType.equals(Content.ContentType.TEXTFILE) && contentData.contains("-title")) {
+            contentElement.setTitle(FileManager.readTextFile(languagePath + contentData));
+        } else if (contentType.equals(Content.ContentType.TEXTFILE)) {
+            contentElement.setDescription(FileManager.readTextFile(languagePath + contentData));
+        } else if (contentType.equals(Content.ContentType.URL)) {
+            contentElement.setUrl(FileManager.readTextFile(languagePath + contentData));
+        } else if (contentType.equals(Content.ContentType.AUDIO)) {
+            contentElement.setAudioFile(new File(languagePath + contentData));
+        } else if (contentType.equals(Content.ContentType.MOVIE)) {
+            contentElement.setVideoFile(new File(languagePath + contentData));
+        } else if (contentType.equals(Content.ContentType.IMAGE)) {
+            contentElement.setImageFile(new File(languagePath + contentData));
+        } else if (contentType.equals(Content.ContentType.HTML_TEXTFILE)) {
+            contentElement.setFullText(FileManager.readTextFile(languagePath + contentData));
         }
     }
 
+    /**
+     * Returns the executor which reads the files of the contents while they are preloaded
+     *
+     * @return preload executor or null, if the files are read by the calling thread
+     */
+    public ExecutorService getPreloadExecutor() {
+        return preloadExecutor;
+    }
+
+    /**
+     * Sets the executor which reads the files of the contents while they are preloaded, e.g. for full preloads of
+     * projects with many languages, which are limited by the latency of opening the files
+     *
+     * @param preloadExecutor preload executor or null, if the files should be read by the calling thread
+     */
+    public void setPreloadExecutor(ExecutorService preloadExecutor) {
+        this.preloadExecutor = preloadExecutor;
+    }
+
+    /**
+     * Returns the cache of lazily loaded texts
+     *
+     * @return text cache or null, if all texts are loaded by preloadAllContents
+     */
+    public ContentTextCache getTextCache() {
+        return textCache;
+    }
+
+    /**
+     * Sets the cache of lazily loaded texts, which is used by the next call of preloadAllContents. With a cache the
+     * startup does not depend on the amount of texts and only the recently used texts are kept in memory.
+     *
+     * @param textCache text cache or null, if all texts should be loaded by preloadAllContents
+     */
+    public void setTextCache(ContentTextCache textCache) {
+        this.textCache = textCache;
+    }
+
     /**
      * Returns a single content element
      *
@@ -125,6 +282,8 @@ public class ContentController {
                 contentElement.setPositions(new ArrayList<String>());
             }
         }
+        positionIndex = new ContentPositionIndex();
+        positionIndexOutdated = false;
     }
 
     /**
@@ -134,22 +293,66 @@ public class ContentController {
      * @param mappingPoint position (coordinates)
      */
     public void addPosition(ContentElement content, MappingPoint mappingPoint) {
+        String position = MappedPositionManager.mappingPointToName(mappingPoint);
+        ContentElement firstLanguageElement = null;
+        boolean firstLanguage = true;
         for (Map.Entry<String, List<ContentElement>> language : contentElements.entrySet()) {
             for (ContentElement contentElement : language.getValue()) {
                 if (contentElement.getContentNumber() == content.getContentNumber()) {
-                    contentElement.getPositions().add(MappedPositionManager.mappingPointToName(mappingPoint));
+                    contentElement.getPositions().add(position);
+                    if (firstLanguage && firstLanguageElement == null) {
+                        firstLanguageElement = contentElement;
+                    }
+                }
+            }
+            firstLanguage = false;
+        }
+        if (!positionIndexOutdated && positionIndex != null && firstLanguageElement != null) {
+            ContentElement indexedElement = positionIndex.get(mappingPoint.getX(), mappingPoint.getY(), mappingPoint.getZ());
+            if (indexedElement == null) {
+                try {
+                    positionIndex.put(mappingPoint.getX(), mappingPoint.getY(), mappingPoint.getZ(), firstLanguageElement);
+                } catch (IllegalArgumentException e) {
+                    positionIndex = null;
                 }
+            } else if (indexedElement != firstLanguageElement) {
+                positionIndexOutdated = true;
+            }
+        }
+    }
+
+    /**
+     * Removes a position from all content elements (removes the connection)
+     *
+     * @param mappingPoint position (coordinates)
+     */
+    public void removePosition(MappingPoint mappingPoint) {
+        List<String> position = Collections.singletonList(MappedPositionManager.mappingPointToName(mappingPoint));
+        for (Map.Entry<String, List<ContentElement>> language : contentElements.entrySet()) {
+            for (ContentElement contentElement : language.getValue()) {
+                contentElement.getPositions().removeAll(position);
             }
         }
+        if (!positionIndexOutdated && positionIndex != null) {
+            positionIndex.remove(mappingPoint.getX(), mappingPoint.getY(), mappingPoint.getZ());
+        }
     }
 
     /**
-     * Returns a single content element by its position
+     * Returns a single content element by its position. The element is found in the position index, the positions are
+     * only scanned if they could not be indexed.
      *
      * @param mappingPoint position (coordinates)
      * @return content element
      */
     public ContentElement getContent(MappingPoint mappingPoint) {
+        if (positionIndexOutdated) {
+            positionIndex = createPositionIndex();
+            positionIndexOutdated = false;
+        }
+        if (positionIndex != null) {
+            return positionIndex.get(mappingPoint.getX(), mappingPoint.getY(), mappingPoint.getZ());
+        }
         String searchPosition = MappedPositionManager.mappingPointToName(mappingPoint);
         if (contentElements.entrySet().iterator().hasNext()) {
             Map.Entry<String, List<ContentElement>> firstLanguage = contentElements.entrySet().iterator().next();
@@ -164,6 +367,83 @@ public class ContentController {
         return null;
     }
 
+    /**
+     * Rebuilds the position index before the next lookup. Has to be called after the content elements or their
+     * positions have been changed without the methods of this controller.
+     */
+    public void updatePositionIndex() {
+        positionIndexOutdated = true;
+    }
+
+    /**
+     * Creates an index of the positions of all content elements, which finds the same elements as getContent without
+     * scanning all positions. The names of the positions are parsed once and checked against
+     * MappedPositionManager.mappingPointToName.
+     *
+     * @return index of all positions or null, if a position name could not be parsed
+     */
+    public ContentPositionIndex createPositionIndex() {
+        ContentPositionIndex index = new ContentPositionIndex();
+        if (contentElements.entrySet().iterator().hasNext()) {
+            Map.Entry<String, List<ContentElement>> firstLanguage = contentElements.entrySet().iterator().next();
+            for (ContentElement contentElement : firstLanguage.getValue()) {
+                for (String position : contentElement.getPositions()) {
+                    MappingPoint mappingPoint = parsePosition(position);
+                    if (mappingPoint == null) {
+                        return null;
+                    }
+                    try {
+                        index.put(mappingPoint.getX(), mappingPoint.getY(), mappingPoint.getZ(), contentElement);
+                    } catch (IllegalArgumentException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Parses the coordinates of a position name
+     *
+     * @param position name of the position
+     * @return position or null, if the name is no position name of MappedPositionManager
+     */
+    protected MappingPoint parsePosition(String position) {
+        int[] coordinates = new int[3];
+        int found = 0;
+        int index = 0;
+        while (index < position.length() && found <= coordinates.length) {
+            char character = position.charAt(index);
+            boolean negative = character == '-' && index + 1 < position.length() && Character.isDigit(position.charAt(index + 1));
+            if (negative || Character.isDigit(character)) {
+                int start = index;
+                index++;
+                while (index < position.length() && Character.isDigit(position.charAt(index))) {
+                    index++;
+                }
+                if (found < coordinates.length) {
+                    try {
+                        coordinates[found] = Integer.parseInt(position.substring(start, index));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+                found++;
+            } else {
+                index++;
+            }
+        }
+        if (found != coordinates.length) {
+            return null;
+        }
+        MappingPoint mappingPoint = new MappingPoint(coordinates[0], coordinates[1], coordinates[2]);
+        if (!position.equals(MappedPositionManager.mappingPointToName(mappingPoint))) {
+            return null;
+        }
+        return mappingPoint;
+    }
+
     /**
      * Returns all contents of a language
      *
@@ -181,31 +461,162 @@ public class ContentController {
     }
 
     /**
-     * Saves all contents to the files and creates the content groups
+     * Saves all contents to the files and creates the content groups. If the contents could not be saved, e.g. because
+     * media files could not be copied, the error is reported by getSaveError.
      *
      * @param savePath directory where the content should be saved
      */
     public void save(String savePath) {
+        mergeUnsavedChanges(contentElements);
+        save(savePath, contentElements, languages);
+    }
+
+    /**
+     * Returns the error of the last save
+     *
+     * @return error, null if the last save has succeeded
+     */
+    public synchronized Exception getSaveError() {
+        return saveError;
+    }
+
+    /**
+     * Saves all contents to the files in the background. The content elements are copied in the calling thread, so
+     * they can be edited while they are saved. If the previous save of the directory has not started yet, it is
+     * replaced by this save, which also writes its changes. The changes of a failed save are written by the next save.
+     *
+     * @param savePath directory where the content should be saved
+     * @return future which is done when the contents have been saved and fails if they could not be saved
+     */
+    public Future<Void> saveAsync(final String savePath) {
+        final java.util.Map<String, List<ContentElement>> copiedContentElements = new LinkedHashMap<String, List<ContentElement>>();
+        for (Map.Entry<String, List<ContentElement>> language : contentElements.entrySet()) {
+            List<ContentElement> copiedElements = new ArrayList<ContentElement>(language.getValue().size());
+            for (ContentElement contentElement : language.getValue()) {
+                ContentElement copiedElement = new ContentElement(contentElement);
+                copiedElement.setPositions(new ArrayList<String>(contentElement.getPositions()));
+                copiedElements.add(copiedElement);
+                contentElement.clearChanges();
+            }
+            copiedContentElements.put(language.getKey(), copiedElements);
+        }
+        mergeUnsavedChanges(copiedContentElements);
+        return getBackgroundSaver().submit(new File(savePath, "content").getAbsolutePath(),
+                new ContentSave(savePath, copiedContentElements, new ArrayList<String>(languages)));
+    }
+
+    /**
+     * Keeps the changes of content elements which could not be saved, so the next save writes them
+     *
+     * @param contentElements content elements of all languages
+     */
+    protected synchronized void keepUnsavedChanges(java.util.Map<String, List<ContentElement>> contentElements) {
+        if (unsavedContentElements != null) {
+            mergeChanges(contentElements, unsavedContentElements);
+        }
+        unsavedContentElements = contentElements;
+    }
+
+    /**
+     * Adds the kept changes of content elements which could not be saved
+     *
+     * @param contentElements content elements of all languages which are saved next
+     */
+    protected synchronized void mergeUnsavedChanges(java.util.Map<String, List<ContentElement>> contentElements) {
+        if (unsavedContentElements != null) {
+            mergeChanges(contentElements, unsavedContentElements);
+            unsavedContentElements = null;
+        }
+    }
+
+    /**
+     * Adds the changes of content elements to the elements with the same language and content number
+     *
+     * @param contentElements content elements which receive the changes
+     * @param changedElements content elements whose changes are added
+     */
+    protected static void mergeChanges(java.util.Map<String, List<ContentElement>> contentElements, java.util.Map<String, List<ContentElement>> changedElements) {
+        for (Map.Entry<String, List<ContentElement>> language : changedElements.entrySet()) {
+            List<ContentElement> languageElements = contentElements.get(language.getKey());
+            if (languageElements != null) {
+                java.util.Map<Integer, ContentElement> elementsByNumber = new HashMap<Integer, ContentElement>();
+                for (ContentElement contentElement : languageElements) {
+                    elementsByNumber.put(contentElement.getContentNumber(), contentElement);
+                }
+                for (ContentElement changedElement : language.getValue()) {
+                    ContentElement contentElement = elementsByNumber.get(changedElement.getContentNumber());
+                    if (contentElement != null) {
+                        contentElement.mergeChanges(changedElement);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the saver which runs the background saves
+     *
+     * @return background saver, a saver with one daemon thread is created on the first call
+     */
+    public synchronized BackgroundSaver getBackgroundSaver() {
+        if (backgroundSaver == null) {
+            backgroundSaver = new BackgroundSaver();
+        }
+        return backgroundSaver;
+    }
+
+    /**
+     * Sets the saver which runs the background saves, e.g. one which is shared with the room model persistence
+     *
+     * @param backgroundSaver background saver
+     */
+    public synchronized void setBackgroundSaver(BackgroundSaver backgroundSaver) {
+        this.backgroundSaver = backgroundSaver;
+    }
+
+    /**
+     * Saves contents to the files and creates the content groups. If the contents are saved to the directory they have
+     * been loaded from or saved to before, only the changed texts are written and the content groups are only created
+     * again if the contents or their positions have changed.
+     *
+     * @param savePath        directory where the content should be saved
+     * @param contentElements content elements of all languages
+     * @param languages       languages
+     * @return true, if the contents have been saved
+     */
+    protected synchronized boolean save(String savePath, java.util.Map<String, List<ContentElement>> contentElements, List<String> languages) {
         try {
             File contentPathFile = new File(savePath + File.separator + "content");
             if (!contentPathFile.exists()) {
                 contentPathFile.mkdir();
             }
+            boolean completeSave = !contentPathFile.getAbsoluteFile().equals(savedContentPath);
+            savedContentPath = null;
             if (mappedContentManager == null) {
                 mappedContentManager = new MappedContentManager(new File(savePath, "content.xml"));
+                completeSave = true;
+            }
+            java.util.Map<Integer, List<String>> structure = getStructure(contentElements);
+            boolean contentManagerDataSaved = !completeSave && structure.equals(savedStructure);
+            savedStructure = null;
+            if (!contentManagerDataSaved) {
+                mappedContentManager.removeAllContent();
             }
-            mappedContentManager.removeAllContent();
 
-            boolean contentManagerDataSaved = false;
             List<Content.ContentType> contentTypes = new ArrayList<Content.ContentType>();
             List<String> multipleData = new ArrayList<String>();
             List<String> positions = new ArrayList<String>();
+            java.util.Map<File, File> mediaTransfers = new LinkedHashMap<File, File>();
+            java.util.Map<File, Set<String>> languageFiles = new HashMap<File, Set<String>>();
             for (String language : contentElements.keySet()) {
-                List<String> files = new ArrayList<String>();
+                Set<String> files = new HashSet<String>();
                 String path = contentPathFile.getAbsolutePath() + File.separator + language + File.separator;
+                languageFiles.put(new File(path), files);
                 File pathFile = new File(path);
+                boolean writeAll = completeSave;
                 if (!pathFile.exists()) {
                     pathFile.mkdirs();
+                    writeAll = true;
                 }
                 for (ContentElement saveElement : contentElements.get(language)) {
                     String titleData = saveElement.getContentNumber() + "-title.txt";
@@ -235,35 +646,43 @@ public class ContentController {
                         mappedContentManager.addPositions(contentTypes, multipleData, positions);
                     }
 
-                    if (saveElement.getTitle() != null) {
-                        writeFile(path + titleData, saveElement.getTitle());
+                    if (saveElement.hasTitle()) {
+                        if (writeAll || saveElement.isTitleChanged()) {
+                            writeFile(path + titleData, saveElement.getTitle());
+                        }
                         files.add(titleData);
                     }
-                    if (saveElement.getDescription() != null) {
-                        writeFile(path + subtitleData, saveElement.getDescription());
+                    if (saveElement.hasDescription()) {
+                        if (writeAll || saveElement.isDescriptionChanged()) {
+                            writeFile(path + subtitleData, saveElement.getDescription());
+                        }
                         files.add(subtitleData);
                     }
-                    if (saveElement.getUrl() != null) {
-                        writeFile(path + urlData, saveElement.getUrl());
+                    if (saveElement.hasUrl()) {
+                        if (writeAll || saveElement.isUrlChanged()) {
+                            writeFile(path + urlData, saveElement.getUrl());
+                        }
                         files.add(urlData);
                     }
-                    if (saveElement.getFullText() != null) {
-                        writeFile(path + fullTextData, saveElement.getFullText());
+                    if (saveElement.hasFullText()) {
+                        if (writeAll || saveElement.isFullTextChanged()) {
+                            writeFile(path + fullTextData, saveElement.getFullText());
+                        }
                         files.add(fullTextData);
                     }
                     if (saveElement.isImageUpdated()) {
                         if (saveElement.getImageFile() != null) {
-                            Files.copy(saveElement.getImageFile().toPath(), new File(path + imageData).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                            mediaTransfers.put(new File(path + imageData), saveElement.getImageFile());
                         }
                     }
                     if (saveElement.isAudioUpdated()) {
                         if (saveElement.getAudioFile() != null) {
-                            Files.copy(saveElement.getAudioFile().toPath(), new File(path + audioData).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                            mediaTransfers.put(new File(path + audioData), saveElement.getAudioFile());
                         }
                     }
                     if (saveElement.isVideoUpdated()) {
                         if (saveElement.getVideoFile() != null) {
-                            Files.copy(saveElement.getVideoFile().toPath(), new File(path + videoData).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                            mediaTransfers.put(new File(path + videoData), saveElement.getVideoFile());
                         }
                     }
                     if (saveElement.getImageFile() != null) {
@@ -277,22 +696,146 @@ public class ContentController {
                     }
                 }
 
-                for (File file : new File(path).listFiles()) {
-                    if (!files.contains(file.getName())) {
+                contentManagerDataSaved = true;
+            }
+
+            for (java.util.Map.Entry<File, File> transfer : failedMediaTransfers.entrySet()) {
+                Set<String> files = languageFiles.get(transfer.getKey().getParentFile());
+                if (files != null && files.contains(transfer.getKey().getName()) && !mediaTransfers.containsKey(transfer.getKey())) {
+                    mediaTransfers.put(transfer.getKey(), transfer.getValue());
+                }
+            }
+            transferMediaFiles(mediaTransfers);
+
+            for (java.util.Map.Entry<File, Set<String>> language : languageFiles.entrySet()) {
+                for (File file : language.getKey().listFiles()) {
+                    if (!language.getValue().contains(file.getName())) {
                         file.delete();
                     }
                 }
-
-                contentManagerDataSaved = true;
             }
             for (File folder : contentPathFile.listFiles()) {
                 if (!languages.contains(folder.getName())) {
                     FileManager.removeDirectory(folder);
                 }
             }
+            for (List<ContentElement> languageElements : contentElements.values()) {
+                for (ContentElement saveElement : languageElements) {
+                    saveElement.clearChanges();
+                }
+            }
+            savedContentPath = contentPathFile.getAbsoluteFile();
+            savedStructure = structure;
+            saveError = null;
+            return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            saveError = e;
+            return false;
+        }
+    }
+
+    /**
+     * Copies the media files of a save on the media executor and waits until all files have been copied. Files which
+     * could not be copied are reported by getMediaTransferErrors and copied again by the next save.
+     *
+     * @param mediaTransfers source files by target file
+     * @throws IOException          if a file could not be copied, the cause is the error of the first file
+     * @throws InterruptedException if the thread has been interrupted while waiting for the copies
+     */
+    protected void transferMediaFiles(java.util.Map<File, File> mediaTransfers) throws IOException, InterruptedException {
+        java.util.Map<File, Future<?>> futures = new LinkedHashMap<File, Future<?>>();
+        failedMediaTransfers.clear();
+        mediaTransferErrors.clear();
+        try {
+            for (final java.util.Map.Entry<File, File> transfer : mediaTransfers.entrySet()) {
+                futures.put(transfer.getKey(), getMediaExecutor().submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        FileManager.transferFile(transfer.getValue(), transfer.getKey(), mediaLinking);
+                        return null;
+                    }
+                }));
+            }
+            for (java.util.Map.Entry<File, Future<?>> future : futures.entrySet()) {
+                try {
+                    future.getValue().get();
+                } catch (ExecutionException e) {
+                    failedMediaTransfers.put(future.getKey(), mediaTransfers.get(future.getKey()));
+                    mediaTransferErrors.put(future.getKey(), e.getCause());
+                }
+            }
+            if (!mediaTransferErrors.isEmpty()) {
+                Map.Entry<File, Throwable> error = mediaTransferErrors.entrySet().iterator().next();
+                throw new IOException(mediaTransferErrors.size() + " media files could not be copied, e.g. " + error.getKey(), error.getValue());
+            }
+        } finally {
+            for (Future<?> future : futures.values()) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the errors of the media files which could not be copied by the last save
+     *
+     * @return errors by target file
+     */
+    public synchronized java.util.Map<File, Throwable> getMediaTransferErrors() {
+        return new LinkedHashMap<File, Throwable>(mediaTransferErrors);
+    }
+
+    /**
+     * Returns the executor which copies the media files of a save
+     *
+     * @return media executor, an executor with one thread per processor (at most four) is created on the first call
+     */
+    public synchronized ExecutorService getMediaExecutor() {
+        if (mediaExecutor == null) {
+            mediaExecutor = Executors.newFixedThreadPool(Math.min(MAX_MEDIA_THREADS, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "content media transfer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mediaExecutor;
+    }
+
+    /**
+     * Sets the executor which copies the media files of a save. Its size limits the amount of parallel copies.
+     *
+     * @param mediaExecutor media executor
+     */
+    public synchronized void setMediaExecutor(ExecutorService mediaExecutor) {
+        this.mediaExecutor = mediaExecutor;
+    }
+
+    /**
+     * Sets if media files are saved as hard links of their sources where the file system allows it, instead of copies.
+     * Linked files share their data with the sources, so the sources must not be changed in place.
+     *
+     * @param mediaLinking true, if hard links should be created
+     */
+    public void setMediaLinking(boolean mediaLinking) {
+        this.mediaLinking = mediaLinking;
+    }
+
+    /**
+     * Returns the content numbers and positions of the contents of the first language, which define the content groups
+     *
+     * @param contentElements content elements of all languages
+     * @return positions by content number
+     */
+    protected java.util.Map<Integer, List<String>> getStructure(java.util.Map<String, List<ContentElement>> contentElements) {
+        java.util.Map<Integer, List<String>> structure = new LinkedHashMap<Integer, List<String>>();
+        if (!contentElements.isEmpty()) {
+            for (ContentElement contentElement : contentElements.values().iterator().next()) {
+                structure.put(contentElement.getContentNumber(), new ArrayList<String>(contentElement.getPositions()));
+            }
         }
+        return structure;
     }
 
     /**
@@ -371,4 +914,57 @@ public class ContentController {
         timeString.append(String.format("%02d", minutes)).append(":").append(String.format("%02d", seconds));
         return timeString.toString();
     }
+
+    /**
+     * File of a content which is read by a parallel preload
+     */
+    protected static class ContentFile {
+        protected ContentElement contentElement;
+        protected Content.ContentType contentType;
+        protected String languagePath;
+        protected String contentData;
+
+        protected ContentFile(ContentElement contentElement, Content.ContentType contentType, String languagePath, String contentData) {
+            this.contentElement = contentElement;
+            this.contentType = contentType;
+            this.languagePath = languagePath;
+            this.contentData = contentData;
+        }
+    }
+
+    /**
+     * Background save of copied content elements. A replaced save passes its changes on to the newer save, a failed
+     * save keeps them for the next save.
+     */
+    protected class ContentSave extends BackgroundSaver.Save {
+        protected String savePath;
+        protected java.util.Map<String, List<ContentElement>> contentElements;
+        protected List<String> languages;
+
+        protected ContentSave(String savePath, java.util.Map<String, List<ContentElement>> contentElements, List<String> languages) {
+            this.savePath = savePath;
+            this.contentElements = contentElements;
+            this.languages = languages;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            synchronized (ContentController.this) {
+                if (!save(savePath, contentElements, languages)) {
+                    keepUnsavedChanges(contentElements);
+                    throw new IOException("Contents could not be saved to " + savePath, saveError);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected void replacedBy(BackgroundSaver.Save newerSave) {
+            if (newerSave instanceof ContentSave) {
+                mergeChanges(((ContentSave) newerSave).contentElements, contentElements);
+            } else {
+                keepUnsavedChanges(contentElements);
+            }
+        }
+    }
 }
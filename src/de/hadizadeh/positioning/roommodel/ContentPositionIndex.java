@@ -0,0 +1,166 @@
+package de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+
+import java.util.Arrays;
+
+/**
+ * Finds contents by their positions in constant time. The coordinates of a position are packed into one long key of
+ * an open addressing hash table, so lookups do not create objects. Coordinates have to be between -2^20 and 2^20 - 1.
+ */
+public class ContentPositionIndex {
+    protected static final int COORDINATE_BITS = 21;
+    protected static final int COORDINATE_OFFSET = 1 << (COORDINATE_BITS - 1);
+    protected static final long EMPTY = -1L;
+
+    protected long[] keys;
+    protected ContentElement[] contents;
+    protected int size;
+
+    /**
+     * Creates an empty index
+     */
+    public ContentPositionIndex() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty index for an expected amount of positions
+     *
+     * @param expectedPositions expected amount of positions
+     */
+    public ContentPositionIndex(int expectedPositions) {
+        int capacity = 16;
+        while (capacity < expectedPositions * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        contents = new ContentElement[capacity];
+    }
+
+    /**
+     * Adds a content at a position, if the position has no content yet
+     *
+     * @param x       x coordinate
+     * @param y       y coordinate
+     * @param z       z coordinate
+     * @param content content
+     * @throws IllegalArgumentException if a coordinate is out of range
+     */
+    public void put(int x, int y, int z, ContentElement content) {
+        if (!isInRange(x) || !isInRange(y) || !isInRange(z)) {
+            throw new IllegalArgumentException("Position is out of range: " + x + ", " + y + ", " + z);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        long key = key(x, y, z);
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        keys[slot] = key;
+        contents[slot] = content;
+        size++;
+    }
+
+    /**
+     * Returns the content of a position
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return content or null, if the position has no content
+     */
+    public ContentElement get(int x, int y, int z) {
+        if (size == 0 || !isInRange(x) || !isInRange(y) || !isInRange(z)) {
+            return null;
+        }
+        long key = key(x, y, z);
+        for (int slot = slot(key); keys[slot] != EMPTY; slot = (slot + 1) & (keys.length - 1)) {
+            if (keys[slot] == key) {
+                return contents[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the content of a position. The following entries of the same probe sequence are shifted back, so
+     * lookups stay correct without markers of removed entries.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @param z z coordinate
+     * @return true, if the position had a content
+     */
+    public boolean remove(int x, int y, int z) {
+        if (size == 0 || !isInRange(x) || !isInRange(y) || !isInRange(z)) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        long key = key(x, y, z);
+        int hole = slot(key);
+        while (keys[hole] != key) {
+            if (keys[hole] == EMPTY) {
+                return false;
+            }
+            hole = (hole + 1) & mask;
+        }
+        for (int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (((slot - slot(keys[slot])) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                contents[hole] = contents[slot];
+                hole = slot;
+            }
+        }
+        keys[hole] = EMPTY;
+        contents[hole] = null;
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the amount of indexed positions
+     *
+     * @return amount of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    protected void grow() {
+        long[] oldKeys = keys;
+        ContentElement[] oldContents = contents;
+        keys = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        contents = new ContentElement[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot] = oldKeys[i];
+                contents[slot] = oldContents[i];
+            }
+        }
+    }
+
+    protected int slot(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32)) & (keys.length - 1);
+    }
+
+    protected static boolean isInRange(int coordinate) {
+        return coordinate >= -COORDINATE_OFFSET && coordinate < COORDINATE_OFFSET;
+    }
+
+    protected static long key(int x, int y, int z) {
+        return ((long) (x + COORDINATE_OFFSET) << (2 * COORDINATE_BITS)) | ((long) (y + COORDINATE_OFFSET) << COORDINATE_BITS) | (z + COORDINATE_OFFSET);
+    }
+}
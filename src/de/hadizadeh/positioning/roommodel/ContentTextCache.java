@@ -0,0 +1,126 @@
+package de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the recently used texts of lazily loaded contents. The texts are read from their files on the first request,
+ * the least recently used texts are removed when the cached texts exceed the maximum amount of characters.
+ */
+public class ContentTextCache implements ContentElement.TextSource {
+    /**
+     * Default maximum amount of cached characters
+     */
+    public static final int DEFAULT_MAX_CHARACTERS = 1 << 22;
+
+    protected LinkedHashMap<String, String> texts;
+    protected long maxCharacters;
+    protected long characters;
+    protected long hits;
+    protected long misses;
+    protected long evictions;
+
+    /**
+     * Creates a cache with the default maximum size
+     */
+    public ContentTextCache() {
+        this(DEFAULT_MAX_CHARACTERS);
+    }
+
+    /**
+     * Creates a cache
+     *
+     * @param maxCharacters maximum amount of cached characters, longer texts are not cached
+     */
+    public ContentTextCache(long maxCharacters) {
+        this.maxCharacters = maxCharacters;
+        texts = new LinkedHashMap<String, String>(16, 0.75f, true);
+    }
+
+    @Override
+    public synchronized String getText(String file) {
+        String text = texts.get(file);
+        if (text != null) {
+            hits++;
+            return text;
+        }
+        misses++;
+        text = readText(file);
+        if (text.length() <= maxCharacters) {
+            texts.put(file, text);
+            characters += text.length();
+            Iterator<String> iterator = texts.values().iterator();
+            while (characters > maxCharacters) {
+                characters -= iterator.next().length();
+                iterator.remove();
+                evictions++;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Removes all texts, e.g. after the files have been changed
+     */
+    public synchronized void clear() {
+        texts.clear();
+        characters = 0;
+    }
+
+    /**
+     * Returns the amount of cached texts
+     *
+     * @return amount of texts
+     */
+    public synchronized int getCount() {
+        return texts.size();
+    }
+
+    /**
+     * Returns the amount of cached characters
+     *
+     * @return amount of characters
+     */
+    public synchronized long getCharacters() {
+        return characters;
+    }
+
+    /**
+     * Returns the amount of requests which have been answered from the cache
+     *
+     * @return amount of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the amount of requests which have read the file
+     *
+     * @return amount of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the amount of texts which have been removed to keep the maximum size
+     *
+     * @return amount of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Reads a text file
+     *
+     * @param file text file
+     * @return text
+     */
+    protected String readText(String file) {
+        return FileManager.readTextFile(file);
+    }
+}
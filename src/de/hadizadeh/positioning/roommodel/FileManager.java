@@ -6,6 +6,8 @@ import org.json.JSONArray;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
@@ -97,6 +99,50 @@ public class FileManager {
         }
     }
 
+    /**
+     * Copies a file with a channel transfer, which lets the operating system copy the data without passing it through
+     * the java heap. Optionally a hard link is created instead, if the file system supports it. A linked target shares
+     * the data of the source, so the source must not be changed in place afterwards.
+     *
+     * @param source source file
+     * @param target target file, an existing file is replaced
+     * @param link   true, if a hard link should be tried first
+     * @throws IOException if the file could not be copied
+     */
+    public static void transferFile(File source, File target, boolean link) throws IOException {
+        if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+            return;
+        }
+        if (link) {
+            try {
+                Files.deleteIfExists(target.toPath());
+                Files.createLink(target.toPath(), source.toPath());
+                return;
+            } catch (IOException e) {
+                // file system does not support links between these files, the file is copied
+            } catch (UnsupportedOperationException e) {
+                // file system does not support links, the file is copied
+            }
+        }
+        FileInputStream inputStream = new FileInputStream(source);
+        try {
+            FileOutputStream outputStream = new FileOutputStream(target);
+            try {
+                FileChannel sourceChannel = inputStream.getChannel();
+                FileChannel targetChannel = outputStream.getChannel();
+                long size = sourceChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += sourceChannel.transferTo(position, size - position, targetChannel);
+                }
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
     /**
      * Calculates the hash check sum of a file (SHA1)
      *
@@ -3,8 +3,13 @@ package de.hadizadeh.positioning.roommodel;
 import de.hadizadeh.positioning.roommodel.model.ContentElement;
 import de.hadizadeh.positioning.roommodel.model.MapSegment;
 import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.MapStorage;
+import de.hadizadeh.positioning.roommodel.storage.RowBandTask;
+import de.hadizadeh.positioning.roommodel.storage.SegmentMapStorage;
 
+import java.util.Arrays;
 import java.util.ResourceBundle;
+import java.util.concurrent.ForkJoinPool;
 
 public abstract class Map {
     public static final int SEGMENTS_PER_METER = 2;
@@ -12,6 +17,22 @@ public abstract class Map {
     public enum Position {
         TOP,BOTTOM,LEFT,RIGHT
     }
+
+    /**
+     * Visits the segments of the map in bulk operations. In parallel mode, it is called from several threads at once.
+     */
+    public interface SegmentVisitor {
+        void visit(int floor, int row, int column, Material material, ContentElement content);
+    }
+
+    /**
+     * Calculates the new material of segments in bulk operations. In parallel mode, it is called from several threads
+     * at once.
+     */
+    public interface SegmentTransformer {
+        Material transform(int floor, int row, int column, Material material, ContentElement content);
+    }
+
     protected int floors;
     protected int floorHeight;
     protected int rows;
@@ -19,6 +40,18 @@ public abstract class Map {
     protected double width;
     protected double length;
     protected MapSegment[][][] mapSegments;
+    protected MapStorage storage;
+    protected MapSegment renderSegment;
+    protected MaterialIndex materialIndex;
+    protected RoomSegmentation roomSegmentation;
+    protected boolean dirty;
+    protected int dirtyStartRow;
+    protected int dirtyStartColumn;
+    protected int dirtyEndRow;
+    protected int dirtyEndColumn;
+    protected ForkJoinPool forkJoinPool;
+    protected MapEditJournal editJournal;
+    protected MapChangeSet changeSet;
 
 
     protected Material selectedMaterial;
@@ -27,29 +60,633 @@ public abstract class Map {
 
 
     public Map(int rows, int columns, int floors, int floorHeight) {
-        this.floors = floors;
         this.floorHeight = floorHeight;
-        this.rows = rows;
-        this.columns = columns;
-        this.length = rows * MapSegment.getSize();
-        this.width = columns * MapSegment.getSize();
+        setStorage(new SegmentMapStorage(this, rows, columns, floors));
+    }
+
+    /**
+     * Creates a map which runs its bulk operations (creating, copying and resizing floors, visiting and transforming
+     * segments) in parallel over floors and row bands. The segments are created in several threads at once, so
+     * createMapSegment and copyMapSegment have to be thread-safe.
+     *
+     * @param rows         amount of rows
+     * @param columns      amount of columns
+     * @param floors       amount of floors
+     * @param floorHeight  height of each floor
+     * @param forkJoinPool pool for parallel bulk operations
+     */
+    public Map(int rows, int columns, int floors, int floorHeight, ForkJoinPool forkJoinPool) {
+        this.floorHeight = floorHeight;
+        this.forkJoinPool = forkJoinPool;
+        setStorage(new SegmentMapStorage(this, rows, columns, floors, forkJoinPool));
+    }
+
+    /**
+     * Creates a map which keeps its segment data in the given storage, e.g. a packed storage for large buildings
+     *
+     * @param storage     storage of the segment data
+     * @param floorHeight height of each floor
+     */
+    public Map(MapStorage storage, int floorHeight) {
+        this.floorHeight = floorHeight;
+        setStorage(storage);
+    }
+
+    /**
+     * Returns the storage of the segment data
+     *
+     * @return storage
+     */
+    public MapStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Replaces the storage of the segment data and takes over its size
+     *
+     * @param storage storage of the segment data
+     */
+    public void setStorage(MapStorage storage) {
+        this.storage = storage;
+        storage.setForkJoinPool(forkJoinPool);
+        updateSize();
+    }
+
+    /**
+     * Returns the pool for parallel bulk operations
+     *
+     * @return pool or null, if all operations run in the calling thread
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Sets the pool for parallel bulk operations. The results of all operations are the same as without a pool.
+     *
+     * @param forkJoinPool pool or null to run all operations in the calling thread
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+        storage.setForkJoinPool(forkJoinPool);
+    }
+
+    /**
+     * Returns the journal which records the changes for undo and redo
+     *
+     * @return journal or null, if changes are not recorded
+     */
+    public MapEditJournal getEditJournal() {
+        return editJournal;
+    }
+
+    /**
+     * Sets the journal which records all changes of materials and contents for undo and redo
+     *
+     * @param editJournal journal or null to stop recording
+     */
+    public void setEditJournal(MapEditJournal editJournal) {
+        this.editJournal = editJournal;
+    }
+
+    /**
+     * Returns the segments which have changed since the last save
+     *
+     * @return change set or null, if changes are not collected
+     */
+    public MapChangeSet getChangeSet() {
+        return changeSet;
+    }
+
+    /**
+     * Sets the change set which collects all changes of materials and contents for incremental saves. Changes of
+     * segment objects which are not made through the map are not collected.
+     *
+     * @param changeSet change set or null to stop collecting
+     */
+    public void setChangeSet(MapChangeSet changeSet) {
+        this.changeSet = changeSet;
+    }
+
+    /**
+     * Starts an undo unit, all changes until endEdit are reverted together
+     */
+    public void beginEdit() {
+        if (editJournal != null) {
+            editJournal.beginEdit();
+        }
+    }
 
-        mapSegments = new MapSegment[floors][rows][columns];
+    /**
+     * Ends an undo unit
+     */
+    public void endEdit() {
+        if (editJournal != null) {
+            editJournal.endEdit();
+        }
+    }
+
+    /**
+     * Reverts the last undo unit
+     *
+     * @return true, if a unit has been reverted
+     */
+    public boolean undo() {
+        return editJournal != null && editJournal.undo(this);
+    }
+
+    /**
+     * Applies the last reverted undo unit again
+     *
+     * @return true, if a unit has been applied
+     */
+    public boolean redo() {
+        return editJournal != null && editJournal.redo(this);
+    }
+
+    /**
+     * Visits all segments of a range of floors
+     *
+     * @param startFloor first floor
+     * @param endFloor   floor after the last floor
+     * @param visitor    visitor of the segments
+     */
+    public void forEachSegment(int startFloor, int endFloor, final SegmentVisitor visitor) {
+        RowBandTask.execute(forkJoinPool, storage, startFloor, endFloor, rows, columns, new RowBandTask.Work() {
+            @Override
+            public void process(int floor, int startRow, int endRow) {
+                for (int row = startRow; row < endRow; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        visitor.visit(floor, row, column, storage.getMaterial(floor, row, column), storage.getContent(floor, row, column));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the material of all segments of a range of floors by the result of the transformer
+     *
+     * @param startFloor  first floor
+     * @param endFloor    floor after the last floor
+     * @param transformer calculates the new material of each segment
+     */
+    public void transform(int startFloor, int endFloor, final SegmentTransformer transformer) {
+        beginEdit();
+        try {
+            RowBandTask.execute(forkJoinPool, storage, startFloor, endFloor, rows, columns, new RowBandTask.Work() {
+                @Override
+                public void process(int floor, int startRow, int endRow) {
+                    for (int row = startRow; row < endRow; row++) {
+                        for (int column = 0; column < columns; column++) {
+                            Material material = storage.getMaterial(floor, row, column);
+                            Material transformed = transformer.transform(floor, row, column, material, storage.getContent(floor, row, column));
+                            if (transformed != material) {
+                                if (editJournal != null) {
+                                    editJournal.recordMaterial(floor, row * columns + column, material, transformed);
+                                }
+                                if (changeSet != null) {
+                                    changeSet.markSegments(floor, row * columns + column, row * columns + column + 1, false);
+                                }
+                                storage.setMaterial(floor, row, column, transformed);
+                            }
+                        }
+                    }
+                }
+            });
+        } finally {
+            endEdit();
+        }
+        materialIndex = null;
+        roomSegmentation = null;
+        markAllDirty();
+    }
+
+    /**
+     * Returns all map segments. If the storage does not hold segment objects, a detached copy is created, so changes
+     * have to be written back with setMapSegments or the segment methods of the map.
+     *
+     * @return map segments of all floors
+     */
+    public MapSegment[][][] getMapSegments() {
+        if (storage instanceof SegmentMapStorage) {
+            return ((SegmentMapStorage) storage).getMapSegments();
+        }
+        MapSegment[][][] copiedMapSegments = new MapSegment[floors][rows][columns];
         for (int floor = 0; floor < floors; floor++) {
             for (int row = 0; row < rows; row++) {
                 for (int column = 0; column < columns; column++) {
-                    mapSegments[floor][row][column] = createMapSegment();
+                    MapSegment mapSegment = createMapSegment();
+                    mapSegment.setMaterial(storage.getMaterial(floor, row, column));
+                    mapSegment.setContent(storage.getContent(floor, row, column));
+                    copiedMapSegments[floor][row][column] = mapSegment;
                 }
             }
         }
+        return copiedMapSegments;
     }
 
-    public MapSegment[][][] getMapSegments() {
-        return mapSegments;
+    public void setMapSegments(MapSegment[][][] mapSegments) {
+        markAllDirty();
+        materialIndex = null;
+        roomSegmentation = null;
+        if (editJournal != null) {
+            editJournal.clear();
+        }
+        if (changeSet != null) {
+            changeSet.markStructureChanged();
+        }
+        if (storage instanceof SegmentMapStorage) {
+            ((SegmentMapStorage) storage).setMapSegments(mapSegments);
+            this.mapSegments = mapSegments;
+        } else {
+            for (int floor = 0; floor < floors; floor++) {
+                for (int row = 0; row < rows; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        storage.setMaterial(floor, row, column, mapSegments[floor][row][column].getMaterial());
+                        storage.setContent(floor, row, column, mapSegments[floor][row][column].getContent());
+                    }
+                }
+            }
+        }
     }
 
-    public void setMapSegments(MapSegment[][][] mapSegments) {
-        this.mapSegments = mapSegments;
+    /**
+     * Returns the material of a segment
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     * @return material or null
+     */
+    public Material getMaterial(int floor, int row, int column) {
+        return storage.getMaterial(floor, row, column);
+    }
+
+    /**
+     * Sets the material of a segment
+     *
+     * @param floor    floor number
+     * @param row      row number
+     * @param column   column number
+     * @param material material or null
+     */
+    public void setMaterial(int floor, int row, int column, Material material) {
+        if (isTrackingMaterials()) {
+            materialChanged(floor, row, column, storage.getMaterial(floor, row, column), material);
+        }
+        if (changeSet != null) {
+            changeSet.markSegments(floor, row * columns + column, row * columns + column + 1, false);
+        }
+        storage.setMaterial(floor, row, column, material);
+        markDirty(floor, row, column);
+    }
+
+    /**
+     * Returns the connected content of a segment
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     * @return content or null
+     */
+    public ContentElement getContent(int floor, int row, int column) {
+        return storage.getContent(floor, row, column);
+    }
+
+    /**
+     * Sets the connected content of a segment
+     *
+     * @param floor   floor number
+     * @param row     row number
+     * @param column  column number
+     * @param content content or null
+     */
+    public void setContent(int floor, int row, int column, ContentElement content) {
+        if (editJournal != null) {
+            editJournal.recordContent(floor, row * columns + column, storage.getContent(floor, row, column), content);
+        }
+        if (changeSet != null) {
+            changeSet.markSegments(floor, row * columns + column, row * columns + column + 1, true);
+        }
+        storage.setContent(floor, row, column, content);
+        markDirty(floor, row, column);
+    }
+
+    /**
+     * Returns the map segment of a position. For storages without segment objects, the returned segment is a shared
+     * flyweight which is only valid until the next call.
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     * @return map segment
+     */
+    public MapSegment getMapSegment(int floor, int row, int column) {
+        if (renderSegment == null && !(storage instanceof SegmentMapStorage)) {
+            renderSegment = createMapSegment();
+        }
+        return storage.getMapSegment(floor, row, column, renderSegment);
+    }
+
+    /**
+     * Sets the material of all segments of a rectangle. Parts outside of the map are ignored.
+     *
+     * @param floor       floor number
+     * @param startRow    first row
+     * @param startColumn first column
+     * @param endRow      last row (inclusive)
+     * @param endColumn   last column (inclusive)
+     * @param material    material or null
+     */
+    public void fillRectangle(int floor, int startRow, int startColumn, int endRow, int endColumn, Material material) {
+        fillRectangle(floor, startRow, startColumn, endRow, endColumn, material, null, false);
+    }
+
+    /**
+     * Sets the connected content of all segments of a rectangle. Parts outside of the map are ignored.
+     *
+     * @param floor       floor number
+     * @param startRow    first row
+     * @param startColumn first column
+     * @param endRow      last row (inclusive)
+     * @param endColumn   last column (inclusive)
+     * @param content     content or null
+     */
+    public void fillRectangle(int floor, int startRow, int startColumn, int endRow, int endColumn, ContentElement content) {
+        fillRectangle(floor, startRow, startColumn, endRow, endColumn, null, content, true);
+    }
+
+    /**
+     * Sets the material of all segments of a line between two segments, e.g. for walls. Parts outside of the map are
+     * ignored.
+     *
+     * @param floor       floor number
+     * @param startRow    row of the start
+     * @param startColumn column of the start
+     * @param endRow      row of the end
+     * @param endColumn   column of the end
+     * @param material    material or null
+     */
+    public void drawLine(int floor, int startRow, int startColumn, int endRow, int endColumn, Material material) {
+        drawLine(floor, startRow, startColumn, endRow, endColumn, material, null, false);
+    }
+
+    /**
+     * Sets the connected content of all segments of a line between two segments. Parts outside of the map are ignored.
+     *
+     * @param floor       floor number
+     * @param startRow    row of the start
+     * @param startColumn column of the start
+     * @param endRow      row of the end
+     * @param endColumn   column of the end
+     * @param content     content or null
+     */
+    public void drawLine(int floor, int startRow, int startColumn, int endRow, int endColumn, ContentElement content) {
+        drawLine(floor, startRow, startColumn, endRow, endColumn, null, content, true);
+    }
+
+    /**
+     * Sets the material of all segments inside of a polygon and on its outline. Parts outside of the map are ignored.
+     *
+     * @param floor    floor number
+     * @param rows     rows of the corners
+     * @param columns  columns of the corners
+     * @param material material or null
+     */
+    public void fillPolygon(int floor, int[] rows, int[] columns, Material material) {
+        fillPolygon(floor, rows, columns, material, null, false);
+    }
+
+    /**
+     * Sets the connected content of all segments inside of a polygon and on its outline. Parts outside of the map are
+     * ignored.
+     *
+     * @param floor   floor number
+     * @param rows    rows of the corners
+     * @param columns columns of the corners
+     * @param content content or null
+     */
+    public void fillPolygon(int floor, int[] rows, int[] columns, ContentElement content) {
+        fillPolygon(floor, rows, columns, null, content, true);
+    }
+
+    /**
+     * Sets the material of all segments which are connected to the start segment (horizontally or vertically) and
+     * have the same material as the start segment
+     *
+     * @param floor    floor number
+     * @param row      row of the start segment
+     * @param column   column of the start segment
+     * @param material new material or null
+     * @return amount of changed segments
+     */
+    public int floodFill(int floor, int row, int column, Material material) {
+        return floodFill(floor, row, column, material, null, false);
+    }
+
+    /**
+     * Sets the connected content of all segments which are connected to the start segment (horizontally or vertically)
+     * and have the same material as the start segment, e.g. all segments of a room
+     *
+     * @param floor   floor number
+     * @param row     row of the start segment
+     * @param column  column of the start segment
+     * @param content content or null
+     * @return amount of filled segments
+     */
+    public int floodFill(int floor, int row, int column, ContentElement content) {
+        return floodFill(floor, row, column, null, content, true);
+    }
+
+    protected void fillRectangle(int floor, int startRow, int startColumn, int endRow, int endColumn, Material material, ContentElement content, boolean paintContent) {
+        beginEdit();
+        try {
+            for (int row = Math.max(startRow, 0); row <= Math.min(endRow, rows - 1); row++) {
+                paintSpan(floor, row, startColumn, endColumn, material, content, paintContent);
+            }
+        } finally {
+            endEdit();
+        }
+    }
+
+    protected void drawLine(int floor, int startRow, int startColumn, int endRow, int endColumn, Material material, ContentElement content, boolean paintContent) {
+        beginEdit();
+        try {
+            int rowDistance = Math.abs(endRow - startRow);
+            int columnDistance = Math.abs(endColumn - startColumn);
+            int rowStep = startRow < endRow ? 1 : -1;
+            int columnStep = startColumn < endColumn ? 1 : -1;
+            int error = columnDistance - rowDistance;
+            int row = startRow;
+            int column = startColumn;
+            int spanStart = startColumn;
+            while (row != endRow || column != endColumn) {
+                int doubledError = 2 * error;
+                int nextRow = row;
+                int nextColumn = column;
+                if (doubledError > -rowDistance) {
+                    error -= rowDistance;
+                    nextColumn += columnStep;
+                }
+                if (doubledError < columnDistance) {
+                    error += columnDistance;
+                    nextRow += rowStep;
+                }
+                if (nextRow != row) {
+                    paintSpan(floor, row, Math.min(spanStart, column), Math.max(spanStart, column), material, content, paintContent);
+                    spanStart = nextColumn;
+                }
+                row = nextRow;
+                column = nextColumn;
+            }
+            paintSpan(floor, row, Math.min(spanStart, column), Math.max(spanStart, column), material, content, paintContent);
+        } finally {
+            endEdit();
+        }
+    }
+
+    protected void fillPolygon(int floor, int[] rows, int[] columns, Material material, ContentElement content, boolean paintContent) {
+        beginEdit();
+        try {
+            int corners = rows.length;
+            int minRow = Integer.MAX_VALUE;
+            int maxRow = Integer.MIN_VALUE;
+            for (int row : rows) {
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+            }
+            double[] crossings = new double[corners];
+            for (int row = Math.max(minRow, 0); row <= Math.min(maxRow, this.rows - 1); row++) {
+                int crossingCount = 0;
+                for (int corner = 0, previous = corners - 1; corner < corners; previous = corner++) {
+                    if ((rows[corner] <= row) != (rows[previous] <= row)) {
+                        crossings[crossingCount++] = columns[corner] + (double) (row - rows[corner]) * (columns[previous] - columns[corner]) / (rows[previous] - rows[corner]);
+                    }
+                }
+                Arrays.sort(crossings, 0, crossingCount);
+                for (int i = 0; i + 1 < crossingCount; i += 2) {
+                    paintSpan(floor, row, (int) Math.ceil(crossings[i]), (int) Math.floor(crossings[i + 1]), material, content, paintContent);
+                }
+            }
+            for (int corner = 0, previous = corners - 1; corner < corners; previous = corner++) {
+                drawLine(floor, rows[previous], columns[previous], rows[corner], columns[corner], material, content, paintContent);
+            }
+        } finally {
+            endEdit();
+        }
+    }
+
+    protected int floodFill(int floor, int row, int column, Material material, ContentElement content, boolean paintContent) {
+        beginEdit();
+        try {
+            Material regionMaterial = storage.getMaterial(floor, row, column);
+            if (!paintContent && (material == null ? regionMaterial == null : material.equals(regionMaterial))) {
+                return 0;
+            }
+            long[] visited = new long[(rows * columns + 63) >> 6];
+            int[] seeds = new int[64];
+            int seedCount = 0;
+            int filled = 0;
+            seeds[seedCount++] = row * columns + column;
+            while (seedCount > 0) {
+                int seed = seeds[--seedCount];
+                int seedRow = seed / columns;
+                int seedColumn = seed % columns;
+                if (!isFloodRegion(visited, floor, seedRow, seedColumn, regionMaterial)) {
+                    continue;
+                }
+                int startColumn = seedColumn;
+                while (startColumn > 0 && isFloodRegion(visited, floor, seedRow, startColumn - 1, regionMaterial)) {
+                    startColumn--;
+                }
+                int endColumn = seedColumn;
+                while (endColumn < columns - 1 && isFloodRegion(visited, floor, seedRow, endColumn + 1, regionMaterial)) {
+                    endColumn++;
+                }
+                for (int index = seedRow * columns + startColumn; index <= seedRow * columns + endColumn; index++) {
+                    visited[index >> 6] |= 1L << index;
+                }
+                paintSpan(floor, seedRow, startColumn, endColumn, material, content, paintContent);
+                filled += endColumn - startColumn + 1;
+                for (int nextRow = seedRow - 1; nextRow <= seedRow + 1; nextRow += 2) {
+                    if (nextRow < 0 || nextRow >= rows) {
+                        continue;
+                    }
+                    boolean inSpan = false;
+                    for (int nextColumn = startColumn; nextColumn <= endColumn; nextColumn++) {
+                        if (isFloodRegion(visited, floor, nextRow, nextColumn, regionMaterial)) {
+                            if (!inSpan) {
+                                if (seedCount == seeds.length) {
+                                    seeds = Arrays.copyOf(seeds, seedCount * 2);
+                                }
+                                seeds[seedCount++] = nextRow * columns + nextColumn;
+                                inSpan = true;
+                            }
+                        } else {
+                            inSpan = false;
+                        }
+                    }
+                }
+            }
+            return filled;
+        } finally {
+            endEdit();
+        }
+    }
+
+    protected boolean isFloodRegion(long[] visited, int floor, int row, int column, Material regionMaterial) {
+        int index = row * columns + column;
+        if ((visited[index >> 6] & (1L << index)) != 0) {
+            return false;
+        }
+        Material material = storage.getMaterial(floor, row, column);
+        return regionMaterial == null ? material == null : regionMaterial.equals(material);
+    }
+
+    /**
+     * Sets the material or the content of a span of segments of a row in one pass. All shape operations write through
+     * this method.
+     *
+     * @param floor        floor number
+     * @param row          row number
+     * @param startColumn  first column
+     * @param endColumn    last column (inclusive)
+     * @param material     material, if the material should be painted
+     * @param content      content, if the content should be painted
+     * @param paintContent true for painting the content, false for painting the material
+     */
+    protected void paintSpan(int floor, int row, int startColumn, int endColumn, Material material, ContentElement content, boolean paintContent) {
+        if (row < 0 || row >= rows) {
+            return;
+        }
+        startColumn = Math.max(startColumn, 0);
+        endColumn = Math.min(endColumn, columns - 1);
+        if (startColumn > endColumn) {
+            return;
+        }
+        if (paintContent) {
+            if (editJournal != null) {
+                for (int column = startColumn; column <= endColumn; column++) {
+                    editJournal.recordContent(floor, row * columns + column, storage.getContent(floor, row, column), content);
+                }
+            }
+            if (changeSet != null) {
+                changeSet.markSegments(floor, row * columns + startColumn, row * columns + endColumn + 1, true);
+            }
+            storage.fillContent(floor, row, startColumn, endColumn, content);
+        } else {
+            if (isTrackingMaterials()) {
+                for (int column = startColumn; column <= endColumn; column++) {
+                    materialChanged(floor, row, column, storage.getMaterial(floor, row, column), material);
+                }
+            }
+            if (changeSet != null) {
+                changeSet.markSegments(floor, row * columns + startColumn, row * columns + endColumn + 1, false);
+            }
+            storage.fillMaterial(floor, row, startColumn, endColumn, material);
+        }
+        markDirty(floor, row, startColumn, row, endColumn);
     }
 
     public int getRows() {
@@ -70,6 +707,9 @@ public abstract class Map {
 
     public void setFloorHeight(int floorHeight) {
         this.floorHeight = floorHeight;
+        if (changeSet != null) {
+            changeSet.markStructureChanged();
+        }
     }
 
     public int calculateRow(double y) {
@@ -92,7 +732,84 @@ public abstract class Map {
         return currentFloor;
     }
 
+    /**
+     * Returns the index of the segments of every material. The index is created on the first call and updated by all
+     * material changes through the map. It has to be invalidated if segment objects are changed directly.
+     *
+     * @return material index
+     */
+    public MaterialIndex getMaterialIndex() {
+        if (materialIndex == null) {
+            materialIndex = new MaterialIndex(storage);
+        }
+        return materialIndex;
+    }
+
+    /**
+     * Drops the material index, so it will be created again on the next request
+     */
+    public void invalidateMaterialIndex() {
+        materialIndex = null;
+    }
+
+    /**
+     * Returns the rooms of all floors. The rooms are labeled on the first call and updated by all material changes
+     * through the map. They have to be invalidated if segment objects are changed directly.
+     *
+     * @return room segmentation
+     */
+    public RoomSegmentation getRoomSegmentation() {
+        if (roomSegmentation == null) {
+            roomSegmentation = new RoomSegmentation(storage);
+        }
+        return roomSegmentation;
+    }
+
+    /**
+     * Sets the room segmentation, e.g. one with other boundary materials than walls, windows and doors
+     *
+     * @param roomSegmentation room segmentation of the current storage or null
+     */
+    public void setRoomSegmentation(RoomSegmentation roomSegmentation) {
+        this.roomSegmentation = roomSegmentation;
+    }
+
+    /**
+     * Drops the room segmentation, so it will be created again on the next request
+     */
+    public void invalidateRoomSegmentation() {
+        roomSegmentation = null;
+    }
+
+    protected boolean isTrackingMaterials() {
+        return materialIndex != null || editJournal != null || roomSegmentation != null;
+    }
+
+    /**
+     * Updates the index, the journal and the rooms before the material of a segment is changed
+     *
+     * @param floor       floor number
+     * @param row         row number
+     * @param column      column number
+     * @param oldMaterial current material
+     * @param newMaterial new material
+     */
+    protected void materialChanged(int floor, int row, int column, Material oldMaterial, Material newMaterial) {
+        if (materialIndex != null) {
+            materialIndex.update(floor, row, column, oldMaterial, newMaterial);
+        }
+        if (editJournal != null) {
+            editJournal.recordMaterial(floor, row * columns + column, oldMaterial, newMaterial);
+        }
+        if (roomSegmentation != null) {
+            roomSegmentation.update(floor, row, column, oldMaterial, newMaterial);
+        }
+    }
+
     public void setCurrentFloor(int currentFloor) {
+        if (this.currentFloor != currentFloor) {
+            markAllDirty();
+        }
         this.currentFloor = currentFloor;
     }
 
@@ -107,6 +824,105 @@ public abstract class Map {
     public void resize() {
         this.length = rows * MapSegment.getSize();
         this.width = columns * MapSegment.getSize();
+        markAllDirty();
+    }
+
+    /**
+     * Marks a segment as changed, so it will be painted by the next dirty rendering. Changes of other floors than the
+     * current floor are ignored, because the floor will be painted completely when it is shown.
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     */
+    public void markDirty(int floor, int row, int column) {
+        markDirty(floor, row, column, row, column);
+    }
+
+    /**
+     * Marks a rectangle of segments as changed
+     *
+     * @param floor       floor number
+     * @param startRow    first row
+     * @param startColumn first column
+     * @param endRow      last row (inclusive)
+     * @param endColumn   last column (inclusive)
+     */
+    public void markDirty(int floor, int startRow, int startColumn, int endRow, int endColumn) {
+        if (floor != currentFloor) {
+            return;
+        }
+        if (dirty) {
+            dirtyStartRow = Math.min(dirtyStartRow, startRow);
+            dirtyStartColumn = Math.min(dirtyStartColumn, startColumn);
+            dirtyEndRow = Math.max(dirtyEndRow, endRow);
+            dirtyEndColumn = Math.max(dirtyEndColumn, endColumn);
+        } else {
+            dirty = true;
+            dirtyStartRow = startRow;
+            dirtyStartColumn = startColumn;
+            dirtyEndRow = endRow;
+            dirtyEndColumn = endColumn;
+        }
+    }
+
+    /**
+     * Marks all segments of the current floor as changed
+     */
+    public void markAllDirty() {
+        dirty = true;
+        dirtyStartRow = 0;
+        dirtyStartColumn = 0;
+        dirtyEndRow = Integer.MAX_VALUE;
+        dirtyEndColumn = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Delivers the information if segments of the current floor have changed since the last rendering
+     *
+     * @return true, if there are changed segments, else false
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Returns the changed rectangle of the current floor
+     *
+     * @return first row, first column, last row and last column (inclusive) or null, if nothing has changed
+     */
+    public int[] getDirtyRegion() {
+        if (!dirty) {
+            return null;
+        }
+        return new int[]{dirtyStartRow, dirtyStartColumn, Math.min(dirtyEndRow, rows - 1), Math.min(dirtyEndColumn, columns - 1)};
+    }
+
+    /**
+     * Forgets all changed segments
+     */
+    public void clearDirtyRegion() {
+        dirty = false;
+    }
+
+    protected void updateSize() {
+        rows = storage.getRows();
+        columns = storage.getColumns();
+        floors = storage.getFloors();
+        if (storage instanceof SegmentMapStorage) {
+            mapSegments = ((SegmentMapStorage) storage).getMapSegments();
+        } else {
+            mapSegments = null;
+        }
+        materialIndex = null;
+        roomSegmentation = null;
+        if (editJournal != null) {
+            editJournal.clear();
+        }
+        if (changeSet != null) {
+            changeSet.markStructureChanged();
+        }
+        resize();
     }
 
     public void addFloor() {
@@ -114,41 +930,13 @@ public abstract class Map {
     }
 
     public void addFloor(int copyFloorNumber) {
-        floors++;
-        MapSegment[][][] changedMapSegments = new MapSegment[floors][rows][columns];
-        for (int floor = 0; floor < floors; floor++) {
-            for (int row = 0; row < rows; row++) {
-                for (int column = 0; column < columns; column++) {
-                    if (floor >= floors - 1) {
-                        if (copyFloorNumber < 0) {
-                            changedMapSegments[floor][row][column] = createMapSegment();
-                        } else {
-                            changedMapSegments[floor][row][column] = copyMapSegment(mapSegments[copyFloorNumber][row][column]);
-                        }
-                    } else {
-                        changedMapSegments[floor][row][column] = mapSegments[floor][row][column];
-                    }
-                }
-            }
-        }
-        mapSegments = changedMapSegments;
+        storage.addFloor(copyFloorNumber);
+        updateSize();
     }
 
     public void removeFloor(int floorNumber) {
-        floors--;
-        MapSegment[][][] changedMapSegments = new MapSegment[floors][rows][columns];
-        int changedFloorIndex = 0;
-        for (int floor = 0; floor < floors + 1; floor++) {
-            if (floor != floorNumber) {
-                for (int row = 0; row < rows; row++) {
-                    for (int column = 0; column < columns; column++) {
-                        changedMapSegments[changedFloorIndex][row][column] = mapSegments[floor][row][column];
-                    }
-                }
-                changedFloorIndex++;
-            }
-        }
-        mapSegments = changedMapSegments;
+        storage.removeFloor(floorNumber);
+        updateSize();
     }
 
     public boolean addMapSegments(int amount, int position) {
@@ -172,69 +960,95 @@ public abstract class Map {
             changedColumns += changeValue;
         }
         if(changedRows > 0 && changedColumns > 0) {
-            int copyRowIndex = 0;
-            int copyColumnIndex = 0;
-            MapSegment[][][] changedMapSegments = new MapSegment[floors][changedRows][changedColumns];
-
-            int maxRowDelimiter = changedRows;
-            int maxColummDelimiter = changedColumns;
-            int compareRows = rows;
-            int compareColums = columns;
-            if (!add) {
-                maxRowDelimiter = rows;
-                maxColummDelimiter = columns;
-                compareRows = changedRows;
-                compareColums = changedColumns;
-            }
-            for (int floor = 0; floor < floors; floor++) {
-                copyRowIndex = 0;
-                for (int row = 0; row < maxRowDelimiter; row++) {
-                    copyColumnIndex = 0;
-                    for (int column = 0; column < maxColummDelimiter; column++) {
-                        if (position == Position.TOP.ordinal() && row < amount || position == Position.BOTTOM.ordinal() && row >= compareRows || position == Position.LEFT.ordinal() && column < amount || position == Position.RIGHT.ordinal() && column >= compareColums) {
-                            if (add) {
-                                changedMapSegments[floor][row][column] = createMapSegment();
-                            }
-                        } else {
-                            if (add) {
-                                changedMapSegments[floor][row][column] = copyMapSegment(mapSegments[floor][copyRowIndex][copyColumnIndex]);
-                            } else {
-                                changedMapSegments[floor][copyRowIndex][copyColumnIndex] = copyMapSegment(mapSegments[floor][row][column]);
-                            }
-                            copyColumnIndex++;
-                        }
-                    }
-                    if (copyColumnIndex > 0) {
-                        copyRowIndex++;
-                    }
-                }
-            }
-            rows = changedRows;
-            columns = changedColumns;
-            mapSegments = changedMapSegments;
-            resize();
+            storage.changeSize(add, amount, position);
+            updateSize();
             return true;
         }
         return false;
     }
 
     protected void render(Object canvas, int startRow, int startColumn, int visibleRows, int visibleColumns) {
-            int maxRow = startRow + visibleRows;
-            int maxColumn = startColumn + visibleColumns;
-            int renderRow = 0;
-            int renderColumn = 0;
-            for (int row = 0; row < rows; row++) {
-                renderColumn = 0;
-                if (row >= startRow && row <= maxRow) {
-                    for (int column = 0; column < columns; column++) {
-                        if (column >= startColumn && column <= maxColumn) {
-                            mapSegments[currentFloor][row][column].render(canvas,row, column,  renderRow, renderColumn);
-                            renderColumn++;
-                        }
-                    }
-                    renderRow++;
-                }
+        renderRegion(canvas, startRow, startColumn, visibleRows, visibleColumns, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        clearPaintedRegion(startRow, startColumn, visibleRows, visibleColumns);
+    }
+
+    /**
+     * Renders only the changed segments of the visible area and forgets the painted changes afterwards. Changes
+     * outside of the visible area stay marked, so they are painted when they are scrolled into view.
+     *
+     * @param canvas         canvas to paint
+     * @param startRow       first visible row
+     * @param startColumn    first visible column
+     * @param visibleRows    amount of visible rows
+     * @param visibleColumns amount of visible columns
+     */
+    protected void renderDirty(Object canvas, int startRow, int startColumn, int visibleRows, int visibleColumns) {
+        if (dirty) {
+            renderRegion(canvas, startRow, startColumn, visibleRows, visibleColumns, dirtyStartRow, dirtyStartColumn, dirtyEndRow, dirtyEndColumn);
+            clearPaintedRegion(startRow, startColumn, visibleRows, visibleColumns);
+        }
+    }
+
+    /**
+     * Removes the painted visible area from the changed rectangle. If the rest is no rectangle, the changed rectangle
+     * is kept completely and the painted segments are painted again by the next dirty rendering.
+     *
+     * @param startRow       first visible row
+     * @param startColumn    first visible column
+     * @param visibleRows    amount of visible rows
+     * @param visibleColumns amount of visible columns
+     */
+    protected void clearPaintedRegion(int startRow, int startColumn, int visibleRows, int visibleColumns) {
+        if (!dirty) {
+            return;
+        }
+        dirtyEndRow = Math.min(dirtyEndRow, rows - 1);
+        dirtyEndColumn = Math.min(dirtyEndColumn, columns - 1);
+        int paintedStartRow = Math.max(startRow, 0);
+        int paintedStartColumn = Math.max(startColumn, 0);
+        int paintedEndRow = startRow + visibleRows;
+        int paintedEndColumn = startColumn + visibleColumns;
+        boolean rowsPainted = paintedStartRow <= dirtyStartRow && dirtyEndRow <= paintedEndRow;
+        boolean columnsPainted = paintedStartColumn <= dirtyStartColumn && dirtyEndColumn <= paintedEndColumn;
+        if (columnsPainted && paintedStartRow <= dirtyStartRow && paintedEndRow >= dirtyStartRow) {
+            dirtyStartRow = paintedEndRow + 1;
+        } else if (columnsPainted && paintedEndRow >= dirtyEndRow && paintedStartRow <= dirtyEndRow) {
+            dirtyEndRow = paintedStartRow - 1;
+        } else if (rowsPainted && paintedStartColumn <= dirtyStartColumn && paintedEndColumn >= dirtyStartColumn) {
+            dirtyStartColumn = paintedEndColumn + 1;
+        } else if (rowsPainted && paintedEndColumn >= dirtyEndColumn && paintedStartColumn <= dirtyEndColumn) {
+            dirtyEndColumn = paintedStartColumn - 1;
+        }
+        if (dirtyStartRow > dirtyEndRow || dirtyStartColumn > dirtyEndColumn) {
+            clearDirtyRegion();
+        }
+    }
+
+    /**
+     * Renders the segments of a rectangle which are inside of the visible area. Only the visible range is iterated.
+     *
+     * @param canvas            canvas to paint
+     * @param startRow          first visible row
+     * @param startColumn       first visible column
+     * @param visibleRows       amount of visible rows
+     * @param visibleColumns    amount of visible columns
+     * @param regionStartRow    first row of the rectangle
+     * @param regionStartColumn first column of the rectangle
+     * @param regionEndRow      last row of the rectangle (inclusive)
+     * @param regionEndColumn   last column of the rectangle (inclusive)
+     */
+    protected void renderRegion(Object canvas, int startRow, int startColumn, int visibleRows, int visibleColumns, int regionStartRow, int regionStartColumn, int regionEndRow, int regionEndColumn) {
+        int firstVisibleRow = Math.max(startRow, 0);
+        int firstVisibleColumn = Math.max(startColumn, 0);
+        int firstRow = Math.max(firstVisibleRow, regionStartRow);
+        int firstColumn = Math.max(firstVisibleColumn, regionStartColumn);
+        int lastRow = Math.min(Math.min(startRow + visibleRows, rows - 1), regionEndRow);
+        int lastColumn = Math.min(Math.min(startColumn + visibleColumns, columns - 1), regionEndColumn);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                getMapSegment(currentFloor, row, column).render(canvas, row, column, row - firstVisibleRow, column - firstVisibleColumn);
             }
+        }
     }
 
     public abstract Object getCanvas();
@@ -0,0 +1,123 @@
+package de.hadizadeh.positioning.roommodel;
+
+import java.util.BitSet;
+
+/**
+ * Collects the segments of a map which have been changed since the last save, so only these segments have to be
+ * written. Changes of the size of the map or of its floors are only flagged, they always require a complete save.
+ * Segments are identified by their index (row * columns + column) per floor.
+ */
+public class MapChangeSet {
+    protected BitSet[] changedSegments;
+    protected boolean contentChanged;
+    protected boolean structureChanged;
+
+    /**
+     * Creates an empty change set
+     *
+     * @param floors amount of floors of the map
+     */
+    public MapChangeSet(int floors) {
+        changedSegments = new BitSet[floors];
+        for (int floor = 0; floor < floors; floor++) {
+            changedSegments[floor] = new BitSet();
+        }
+    }
+
+    /**
+     * Marks a range of segments of a row as changed
+     *
+     * @param floor      floor number
+     * @param startIndex index of the first segment
+     * @param endIndex   index after the last segment
+     * @param content    true, if the contents have changed, false for the materials
+     */
+    public synchronized void markSegments(int floor, int startIndex, int endIndex, boolean content) {
+        if (floor >= changedSegments.length) {
+            structureChanged = true;
+            return;
+        }
+        changedSegments[floor].set(startIndex, endIndex);
+        contentChanged |= content;
+    }
+
+    /**
+     * Adds the changes of an older change set, e.g. of a save which has not been written
+     *
+     * @param changeSet older change set
+     */
+    public void merge(MapChangeSet changeSet) {
+        synchronized (changeSet) {
+            synchronized (this) {
+                if (changeSet.changedSegments.length != changedSegments.length) {
+                    structureChanged = true;
+                } else {
+                    for (int floor = 0; floor < changedSegments.length; floor++) {
+                        changedSegments[floor].or(changeSet.changedSegments[floor]);
+                    }
+                }
+                contentChanged |= changeSet.contentChanged;
+                structureChanged |= changeSet.structureChanged;
+            }
+        }
+    }
+
+    /**
+     * Marks the size or the floors of the map as changed
+     */
+    public synchronized void markStructureChanged() {
+        structureChanged = true;
+    }
+
+    /**
+     * Delivers the information if the size or the floors of the map have changed
+     *
+     * @return true, if the map has to be saved completely
+     */
+    public synchronized boolean isStructureChanged() {
+        return structureChanged;
+    }
+
+    /**
+     * Delivers the information if contents of segments have changed
+     *
+     * @return true, if contents have changed
+     */
+    public synchronized boolean isContentChanged() {
+        return contentChanged;
+    }
+
+    /**
+     * Returns the changed segments of a floor
+     *
+     * @param floor floor number
+     * @return indices of the changed segments, must not be modified
+     */
+    public synchronized BitSet getChangedSegments(int floor) {
+        return changedSegments[floor];
+    }
+
+    /**
+     * Returns the amount of changed segments of all floors
+     *
+     * @return amount of changed segments
+     */
+    public synchronized int getChangedCount() {
+        int count = 0;
+        for (BitSet floor : changedSegments) {
+            count += floor.cardinality();
+        }
+        return count;
+    }
+
+    /**
+     * Forgets all changes after a save
+     */
+    public synchronized void clear() {
+        for (BitSet floor : changedSegments) {
+            floor.clear();
+        }
+        contentChanged = false;
+        structureChanged = false;
+    }
+}
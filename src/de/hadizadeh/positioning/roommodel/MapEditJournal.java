@@ -0,0 +1,345 @@
+package de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.util.Arrays;
+
+/**
+ * Records the changes of a map as deltas (segment, old and new value) for undo and redo. All changes between
+ * beginEdit and endEdit form one undo unit, changes outside of an edit form a unit on their own. Several changes of the
+ * same segment in one unit are merged into one delta and deltas which end with the old value are dropped. If the
+ * journal holds more deltas than its limit, the oldest units are removed.
+ */
+public class MapEditJournal {
+    /**
+     * Default limit of stored deltas
+     */
+    public static final int DEFAULT_MAX_DELTAS = 1 << 20;
+
+    protected int maxDeltas;
+    protected long[] cells;
+    protected Object[] oldValues;
+    protected Object[] newValues;
+    protected int deltaCount;
+    protected int[] unitStarts;
+    protected int unitCount;
+    protected int currentUnit;
+    protected int editDepth;
+    protected boolean applying;
+    protected long[] openKeys;
+    protected int[] openDeltas;
+    protected int openCount;
+
+    /**
+     * Creates a journal with the default limit
+     */
+    public MapEditJournal() {
+        this(DEFAULT_MAX_DELTAS);
+    }
+
+    /**
+     * Creates a journal
+     *
+     * @param maxDeltas limit of stored deltas
+     */
+    public MapEditJournal(int maxDeltas) {
+        this.maxDeltas = maxDeltas;
+        cells = new long[64];
+        oldValues = new Object[64];
+        newValues = new Object[64];
+        unitStarts = new int[16];
+        openKeys = new long[64];
+        openDeltas = new int[64];
+        Arrays.fill(openKeys, -1L);
+    }
+
+    /**
+     * Starts an undo unit, e.g. at the beginning of a stroke. Edits may be nested, the unit ends with the outermost
+     * edit.
+     */
+    public synchronized void beginEdit() {
+        if (editDepth++ == 0) {
+            startUnit();
+        }
+    }
+
+    /**
+     * Ends an undo unit
+     */
+    public synchronized void endEdit() {
+        if (editDepth > 0 && --editDepth == 0) {
+            finishUnit();
+        }
+    }
+
+    /**
+     * Records the change of a material
+     *
+     * @param floor       floor number
+     * @param index       row * columns + column
+     * @param oldMaterial previous material
+     * @param newMaterial new material
+     */
+    public synchronized void recordMaterial(int floor, int index, Material oldMaterial, Material newMaterial) {
+        record(((long) floor << 32) | ((long) index << 1), oldMaterial, newMaterial);
+    }
+
+    /**
+     * Records the change of a content
+     *
+     * @param floor      floor number
+     * @param index      row * columns + column
+     * @param oldContent previous content
+     * @param newContent new content
+     */
+    public synchronized void recordContent(int floor, int index, ContentElement oldContent, ContentElement newContent) {
+        record(((long) floor << 32) | ((long) index << 1) | 1, oldContent, newContent);
+    }
+
+    /**
+     * Reverts the last unit
+     *
+     * @param map map of the journal
+     * @return true, if a unit has been reverted
+     */
+    public synchronized boolean undo(Map map) {
+        if (!canUndo()) {
+            return false;
+        }
+        currentUnit--;
+        applying = true;
+        try {
+            for (int delta = unitEnd(currentUnit) - 1; delta >= unitStarts[currentUnit]; delta--) {
+                apply(map, delta, oldValues[delta]);
+            }
+        } finally {
+            applying = false;
+        }
+        return true;
+    }
+
+    /**
+     * Applies the last reverted unit again
+     *
+     * @param map map of the journal
+     * @return true, if a unit has been applied
+     */
+    public synchronized boolean redo(Map map) {
+        if (!canRedo()) {
+            return false;
+        }
+        applying = true;
+        try {
+            for (int delta = unitStarts[currentUnit]; delta < unitEnd(currentUnit); delta++) {
+                apply(map, delta, newValues[delta]);
+            }
+        } finally {
+            applying = false;
+        }
+        currentUnit++;
+        return true;
+    }
+
+    /**
+     * Delivers the information if a unit can be reverted
+     *
+     * @return true, if a unit can be reverted
+     */
+    public synchronized boolean canUndo() {
+        return editDepth == 0 && currentUnit > 0;
+    }
+
+    /**
+     * Delivers the information if a reverted unit can be applied again
+     *
+     * @return true, if a unit can be applied again
+     */
+    public synchronized boolean canRedo() {
+        return editDepth == 0 && currentUnit < unitCount;
+    }
+
+    /**
+     * Removes all units, e.g. after the size of the map has changed
+     */
+    public synchronized void clear() {
+        Arrays.fill(oldValues, 0, deltaCount, null);
+        Arrays.fill(newValues, 0, deltaCount, null);
+        deltaCount = 0;
+        unitCount = 0;
+        currentUnit = 0;
+        if (editDepth > 0) {
+            startUnit();
+        }
+    }
+
+    /**
+     * Returns the amount of stored deltas
+     *
+     * @return amount of deltas
+     */
+    public synchronized int getDeltaCount() {
+        return deltaCount;
+    }
+
+    protected void record(long cell, Object oldValue, Object newValue) {
+        if (applying || (oldValue == null ? newValue == null : oldValue.equals(newValue))) {
+            return;
+        }
+        if (editDepth == 0) {
+            startUnit();
+        }
+        int openDelta = findOpenDelta(cell);
+        if (openDelta >= 0) {
+            newValues[openDelta] = newValue;
+        } else {
+            if (deltaCount == cells.length) {
+                cells = Arrays.copyOf(cells, deltaCount * 2);
+                oldValues = Arrays.copyOf(oldValues, deltaCount * 2);
+                newValues = Arrays.copyOf(newValues, deltaCount * 2);
+            }
+            cells[deltaCount] = cell;
+            oldValues[deltaCount] = oldValue;
+            newValues[deltaCount] = newValue;
+            addOpenDelta(cell, deltaCount);
+            deltaCount++;
+        }
+        if (editDepth == 0) {
+            finishUnit();
+        }
+    }
+
+    protected void apply(Map map, int delta, Object value) {
+        long cell = cells[delta];
+        int floor = (int) (cell >>> 32);
+        int index = (int) cell >>> 1;
+        int row = index / map.getColumns();
+        int column = index % map.getColumns();
+        if ((cell & 1) == 0) {
+            map.setMaterial(floor, row, column, (Material) value);
+        } else {
+            map.setContent(floor, row, column, (ContentElement) value);
+        }
+    }
+
+    protected void startUnit() {
+        if (currentUnit < unitCount) {
+            int redoStart = unitStarts[currentUnit];
+            Arrays.fill(oldValues, redoStart, deltaCount, null);
+            Arrays.fill(newValues, redoStart, deltaCount, null);
+            deltaCount = redoStart;
+            unitCount = currentUnit;
+        }
+        if (unitCount == unitStarts.length) {
+            unitStarts = Arrays.copyOf(unitStarts, unitCount * 2);
+        }
+        unitStarts[unitCount++] = deltaCount;
+        currentUnit = unitCount;
+    }
+
+    /**
+     * Ends the open unit: drops deltas which end with their old value, removes an empty unit and trims the journal to
+     * its limit
+     */
+    protected void finishUnit() {
+        if (openKeys.length > 64) {
+            openKeys = new long[64];
+            openDeltas = new int[64];
+            Arrays.fill(openKeys, -1L);
+        } else if (openCount > 0) {
+            Arrays.fill(openKeys, -1L);
+        }
+        openCount = 0;
+        int start = unitStarts[unitCount - 1];
+        int kept = start;
+        for (int delta = start; delta < deltaCount; delta++) {
+            Object oldValue = oldValues[delta];
+            if (oldValue == null ? newValues[delta] != null : !oldValue.equals(newValues[delta])) {
+                cells[kept] = cells[delta];
+                oldValues[kept] = oldValue;
+                newValues[kept] = newValues[delta];
+                kept++;
+            }
+        }
+        Arrays.fill(oldValues, kept, deltaCount, null);
+        Arrays.fill(newValues, kept, deltaCount, null);
+        deltaCount = kept;
+        if (kept == start) {
+            unitCount--;
+            currentUnit = unitCount;
+        }
+        if (deltaCount > maxDeltas && unitCount > 1) {
+            trim(maxDeltas - (maxDeltas >> 2));
+        }
+    }
+
+    /**
+     * Removes the oldest units until at most the given amount of deltas is stored. The newest unit is always kept.
+     *
+     * @param targetDeltas amount of deltas
+     */
+    protected void trim(int targetDeltas) {
+        int droppedUnits = 1;
+        while (droppedUnits < unitCount - 1 && deltaCount - unitStarts[droppedUnits] > targetDeltas) {
+            droppedUnits++;
+        }
+        int droppedDeltas = unitStarts[droppedUnits];
+        System.arraycopy(cells, droppedDeltas, cells, 0, deltaCount - droppedDeltas);
+        System.arraycopy(oldValues, droppedDeltas, oldValues, 0, deltaCount - droppedDeltas);
+        System.arraycopy(newValues, droppedDeltas, newValues, 0, deltaCount - droppedDeltas);
+        Arrays.fill(oldValues, deltaCount - droppedDeltas, deltaCount, null);
+        Arrays.fill(newValues, deltaCount - droppedDeltas, deltaCount, null);
+        deltaCount -= droppedDeltas;
+        for (int unit = droppedUnits; unit < unitCount; unit++) {
+            unitStarts[unit - droppedUnits] = unitStarts[unit] - droppedDeltas;
+        }
+        unitCount -= droppedUnits;
+        currentUnit = Math.max(currentUnit - droppedUnits, 0);
+    }
+
+    protected int unitEnd(int unit) {
+        return unit + 1 < unitCount ? unitStarts[unit + 1] : deltaCount;
+    }
+
+    protected int findOpenDelta(long cell) {
+        if (openCount == 0) {
+            return -1;
+        }
+        int mask = openKeys.length - 1;
+        for (int slot = hash(cell) & mask; openKeys[slot] != -1L; slot = (slot + 1) & mask) {
+            if (openKeys[slot] == cell) {
+                return openDeltas[slot];
+            }
+        }
+        return -1;
+    }
+
+    protected void addOpenDelta(long cell, int delta) {
+        if ((openCount + 1) * 2 > openKeys.length) {
+            long[] previousKeys = openKeys;
+            int[] previousDeltas = openDeltas;
+            openKeys = new long[previousKeys.length * 2];
+            openDeltas = new int[previousKeys.length * 2];
+            Arrays.fill(openKeys, -1L);
+            openCount = 0;
+            for (int slot = 0; slot < previousKeys.length; slot++) {
+                if (previousKeys[slot] != -1L) {
+                    addOpenDelta(previousKeys[slot], previousDeltas[slot]);
+                }
+            }
+        }
+        int mask = openKeys.length - 1;
+        int slot = hash(cell) & mask;
+        while (openKeys[slot] != -1L) {
+            slot = (slot + 1) & mask;
+        }
+        openKeys[slot] = cell;
+        openDeltas[slot] = delta;
+        openCount++;
+    }
+
+    protected static int hash(long cell) {
+        long hash = cell * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,185 @@
+package de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.MapStorage;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Indexes the segments of every material per floor as bit sets. Bit number row * columns + column stands for a
+ * segment, so all segments of a material, counts and set operations between materials can be calculated without
+ * scanning the map.
+ */
+public class MaterialIndex {
+    protected int rows;
+    protected int columns;
+    protected List<java.util.Map<Material, long[]>> floors;
+
+    /**
+     * Creates the index of all segments of a storage
+     *
+     * @param storage storage of the map
+     */
+    public MaterialIndex(MapStorage storage) {
+        rows = storage.getRows();
+        columns = storage.getColumns();
+        floors = new ArrayList<java.util.Map<Material, long[]>>();
+        for (int floor = 0; floor < storage.getFloors(); floor++) {
+            floors.add(new HashMap<Material, long[]>());
+            Material lastMaterial = null;
+            long[] lastBits = null;
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    Material material = storage.getMaterial(floor, row, column);
+                    if (material != null) {
+                        if (!material.equals(lastMaterial)) {
+                            lastMaterial = material;
+                            lastBits = bits(floor, material);
+                        }
+                        int index = row * columns + column;
+                        lastBits[index >> 6] |= 1L << index;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the index after the material of a segment has changed
+     *
+     * @param floor       floor number
+     * @param row         row number
+     * @param column      column number
+     * @param oldMaterial previous material or null
+     * @param newMaterial new material or null
+     */
+    public void update(int floor, int row, int column, Material oldMaterial, Material newMaterial) {
+        int index = row * columns + column;
+        if (oldMaterial != null) {
+            long[] oldBits = floors.get(floor).get(oldMaterial);
+            if (oldBits != null) {
+                oldBits[index >> 6] &= ~(1L << index);
+            }
+        }
+        if (newMaterial != null) {
+            bits(floor, newMaterial)[index >> 6] |= 1L << index;
+        }
+    }
+
+    /**
+     * Returns all segments of the given materials on a floor. The result is a copy and may be changed, e.g. for set
+     * operations with the segments of other materials or floors.
+     *
+     * @param floor     floor number
+     * @param materials materials
+     * @return segments (bit number row * columns + column)
+     */
+    public BitSet getSegments(int floor, Material... materials) {
+        long[] union = new long[wordCount()];
+        for (Material material : materials) {
+            long[] materialBits = floors.get(floor).get(material);
+            if (materialBits != null) {
+                for (int i = 0; i < union.length; i++) {
+                    union[i] |= materialBits[i];
+                }
+            }
+        }
+        return BitSet.valueOf(union);
+    }
+
+    /**
+     * Returns the amount of segments of a material on a floor
+     *
+     * @param floor    floor number
+     * @param material material
+     * @return amount of segments
+     */
+    public int count(int floor, Material material) {
+        long[] materialBits = floors.get(floor).get(material);
+        int count = 0;
+        if (materialBits != null) {
+            for (long word : materialBits) {
+                count += Long.bitCount(word);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the amount of segments of a material inside of a rectangle
+     *
+     * @param floor       floor number
+     * @param material    material
+     * @param startRow    first row
+     * @param startColumn first column
+     * @param endRow      last row (inclusive)
+     * @param endColumn   last column (inclusive)
+     * @return amount of segments
+     */
+    public int count(int floor, Material material, int startRow, int startColumn, int endRow, int endColumn) {
+        long[] materialBits = floors.get(floor).get(material);
+        int count = 0;
+        if (materialBits != null) {
+            for (int row = Math.max(startRow, 0); row <= Math.min(endRow, rows - 1); row++) {
+                int from = row * columns + Math.max(startColumn, 0);
+                int to = row * columns + Math.min(endColumn, columns - 1) + 1;
+                count += countRange(materialBits, from, to);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the row of a bit number
+     *
+     * @param index bit number
+     * @return row
+     */
+    public int getRow(int index) {
+        return index / columns;
+    }
+
+    /**
+     * Returns the column of a bit number
+     *
+     * @param index bit number
+     * @return column
+     */
+    public int getColumn(int index) {
+        return index % columns;
+    }
+
+    protected long[] bits(int floor, Material material) {
+        long[] materialBits = floors.get(floor).get(material);
+        if (materialBits == null) {
+            materialBits = new long[wordCount()];
+            floors.get(floor).put(material, materialBits);
+        }
+        return materialBits;
+    }
+
+    protected int wordCount() {
+        return (rows * columns + 63) >> 6;
+    }
+
+    protected static int countRange(long[] bits, int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        int firstWord = from >> 6;
+        int lastWord = (to - 1) >> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            return Long.bitCount(bits[firstWord] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(bits[firstWord] & firstMask);
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            count += Long.bitCount(bits[word]);
+        }
+        return count + Long.bitCount(bits[lastWord] & lastMask);
+    }
+}
@@ -0,0 +1,96 @@
+package de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds materials by the encoded bytes of their names, so names can be resolved directly in a file buffer without
+ * decoding them. The names are stored in an open addressing hash table.
+ */
+public class MaterialNameIndex {
+    protected byte[][] names;
+    protected Material[] materials;
+    protected int mask;
+
+    /**
+     * Creates an index of materials
+     *
+     * @param materials available materials
+     * @param charset   charset of the encoded names
+     */
+    public MaterialNameIndex(List<Material> materials, Charset charset) {
+        int capacity = 16;
+        while (capacity < materials.size() * 2) {
+            capacity <<= 1;
+        }
+        names = new byte[capacity][];
+        this.materials = new Material[capacity];
+        mask = capacity - 1;
+        for (Material material : materials) {
+            byte[] name = material.getName().getBytes(charset);
+            int slot = hash(ByteBuffer.wrap(name), 0, name.length) & mask;
+            while (names[slot] != null && !Arrays.equals(names[slot], name)) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            this.materials[slot] = material;
+        }
+    }
+
+    /**
+     * Returns all materials of the index
+     *
+     * @return materials
+     */
+    public List<Material> getMaterials() {
+        List<Material> indexedMaterials = new ArrayList<Material>();
+        for (Material material : materials) {
+            if (material != null) {
+                indexedMaterials.add(material);
+            }
+        }
+        return indexedMaterials;
+    }
+
+    /**
+     * Returns the material of an encoded name
+     *
+     * @param buffer buffer which contains the name
+     * @param start  position of the first byte of the name
+     * @param length amount of bytes of the name
+     * @return material or null, if the name is unknown
+     */
+    public Material get(ByteBuffer buffer, int start, int length) {
+        for (int slot = hash(buffer, start, length) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (matches(names[slot], buffer, start, length)) {
+                return materials[slot];
+            }
+        }
+        return null;
+    }
+
+    protected static boolean matches(byte[] name, ByteBuffer buffer, int start, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static int hash(ByteBuffer buffer, int start, int length) {
+        int hash = 0x811C9DC5;
+        for (int i = start; i < start + length; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,277 @@
+package de.hadizadeh.positioning.roommodel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Layout of binary room model files: magic number, version, rows, columns, floors and floor height, followed by the
+ * material dictionary (amount and names, material id 0 stands for no material) and the rows of all floors. Every row
+ * is stored as runs of segments with the same material, each run as variable length run length and material id.
+ * Since version 2, the dictionary is followed by an index of the floors (offset, length and CRC32 of the data of each
+ * floor) and the CRC32 of the header, so single floors can be loaded and corrupted files are detected before they are
+ * parsed.
+ */
+public class RoomModelBinaryFormat {
+    /**
+     * Magic number at the beginning of binary room model files
+     */
+    public static final int MAGIC = 0x49504D42;
+    /**
+     * Version of the layout
+     */
+    public static final int VERSION = 2;
+    /**
+     * Version of the layout without floor index
+     */
+    public static final int VERSION_WITHOUT_INDEX = 1;
+    /**
+     * Magic number at the beginning of journals of incremental saves
+     */
+    public static final int JOURNAL_MAGIC = 0x49504D4A;
+
+    protected RoomModelBinaryFormat() {
+    }
+
+    /**
+     * Checks the CRC32 of data
+     *
+     * @param data     data
+     * @param length   amount of bytes of the data
+     * @param checksum expected CRC32
+     * @param name     name of the data for the error message
+     * @throws IOException if the checksum does not match
+     */
+    public static void verifyChecksum(byte[] data, int length, int checksum, String name) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Room model file is corrupted, invalid checksum of " + name);
+        }
+    }
+
+    /**
+     * Writes a non negative number with seven bits per byte, so small numbers only need one byte
+     *
+     * @param output output
+     * @param value  non negative number
+     * @throws IOException if the number could not be written
+     */
+    public static void writeVarInt(DataOutput output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    /**
+     * Reads a number which has been written by writeVarInt
+     *
+     * @param input input
+     * @return number
+     * @throws IOException if the number could not be read
+     */
+    public static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int current = input.readUnsignedByte();
+            value |= (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Room model file is corrupted, invalid number");
+    }
+
+    /**
+     * Header of a binary room model file
+     */
+    public static class Header {
+        protected int version;
+        protected int rows;
+        protected int columns;
+        protected int floors;
+        protected int floorHeight;
+        protected String[] materialNames;
+        protected long[] floorOffsets;
+        protected int[] floorLengths;
+        protected int[] floorChecksums;
+
+        /**
+         * Creates the header of a new file of the current version
+         *
+         * @param rows          amount of rows
+         * @param columns       amount of columns
+         * @param floors        amount of floors
+         * @param floorHeight   height of each floor
+         * @param materialNames names of the materials with the ids 1 to n
+         */
+        public Header(int rows, int columns, int floors, int floorHeight, String[] materialNames) {
+            this.version = VERSION;
+            this.rows = rows;
+            this.columns = columns;
+            this.floors = floors;
+            this.floorHeight = floorHeight;
+            this.materialNames = materialNames;
+            floorOffsets = new long[floors];
+            floorLengths = new int[floors];
+            floorChecksums = new int[floors];
+        }
+
+        protected Header() {
+        }
+
+        /**
+         * Reads the header of a file, including the magic number
+         *
+         * @param inputStream stream at the beginning of the file
+         * @return header
+         * @throws IOException if the file is no valid binary room model file
+         */
+        public static Header read(InputStream inputStream) throws IOException {
+            CRC32 crc = new CRC32();
+            DataInputStream input = new DataInputStream(new CheckedInputStream(inputStream, crc));
+            if (input.readInt() != MAGIC) {
+                throw new IOException("No binary room model file");
+            }
+            Header header = new Header();
+            header.version = input.readInt();
+            if (header.version != VERSION && header.version != VERSION_WITHOUT_INDEX) {
+                throw new IOException("Unsupported binary room model version: " + header.version);
+            }
+            header.rows = input.readInt();
+            header.columns = input.readInt();
+            header.floors = input.readInt();
+            header.floorHeight = input.readInt();
+            if (header.rows <= 0 || header.columns <= 0 || header.floors <= 0 || header.floorHeight <= 0) {
+                throw new IOException("Room model file is corrupted, invalid size");
+            }
+            int materialCount = input.readInt();
+            if (materialCount < 0 || materialCount >= Short.MAX_VALUE) {
+                throw new IOException("Room model file is corrupted, invalid material dictionary");
+            }
+            header.materialNames = new String[materialCount];
+            for (int i = 0; i < materialCount; i++) {
+                header.materialNames[i] = input.readUTF();
+            }
+            if (header.hasFloorIndex()) {
+                header.floorOffsets = new long[header.floors];
+                header.floorLengths = new int[header.floors];
+                header.floorChecksums = new int[header.floors];
+                for (int floor = 0; floor < header.floors; floor++) {
+                    header.floorOffsets[floor] = input.readLong();
+                    header.floorLengths[floor] = input.readInt();
+                    header.floorChecksums[floor] = input.readInt();
+                }
+                int checksum = (int) crc.getValue();
+                if (input.readInt() != checksum) {
+                    throw new IOException("Room model file is corrupted, invalid checksum of the header");
+                }
+                long offset = header.toBytes().length;
+                for (int floor = 0; floor < header.floors; floor++) {
+                    if (header.floorOffsets[floor] != offset || header.floorLengths[floor] < 0) {
+                        throw new IOException("Room model file is corrupted, invalid index of floor " + floor);
+                    }
+                    offset += header.floorLengths[floor];
+                }
+            }
+            return header;
+        }
+
+        /**
+         * Encodes the header with the current floor index
+         *
+         * @return bytes of the header
+         * @throws IOException if the header could not be encoded
+         */
+        public byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(MAGIC);
+            output.writeInt(version);
+            output.writeInt(rows);
+            output.writeInt(columns);
+            output.writeInt(floors);
+            output.writeInt(floorHeight);
+            output.writeInt(materialNames.length);
+            for (String materialName : materialNames) {
+                output.writeUTF(materialName);
+            }
+            for (int floor = 0; floor < floors; floor++) {
+                output.writeLong(floorOffsets[floor]);
+                output.writeInt(floorLengths[floor]);
+                output.writeInt(floorChecksums[floor]);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            output.writeInt((int) crc.getValue());
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Delivers the information if the file has an index of the floors
+         *
+         * @return true, if single floors can be loaded
+         */
+        public boolean hasFloorIndex() {
+            return version != VERSION_WITHOUT_INDEX;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+
+        public int getFloors() {
+            return floors;
+        }
+
+        public int getFloorHeight() {
+            return floorHeight;
+        }
+
+        public String[] getMaterialNames() {
+            return materialNames;
+        }
+
+        public long getFloorOffset(int floor) {
+            return floorOffsets[floor];
+        }
+
+        public int getFloorLength(int floor) {
+            return floorLengths[floor];
+        }
+
+        public int getFloorChecksum(int floor) {
+            return floorChecksums[floor];
+        }
+
+        /**
+         * Sets the position of the data of a floor
+         *
+         * @param floor    floor number
+         * @param offset   offset of the data in the file
+         * @param length   amount of bytes of the data
+         * @param checksum CRC32 of the data
+         */
+        public void setFloor(int floor, long offset, int length, int checksum) {
+            floorOffsets[floor] = offset;
+            floorLengths[floor] = length;
+            floorChecksums[floor] = checksum;
+        }
+    }
+}
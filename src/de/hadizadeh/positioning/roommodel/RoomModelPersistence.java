@@ -4,20 +4,73 @@ package de.hadizadeh.positioning.roommodel;
 import de.hadizadeh.positioning.content.exceptions.ContentPersistenceException;
 import de.hadizadeh.positioning.model.MappingPoint;
 import de.hadizadeh.positioning.roommodel.model.ContentElement;
-import de.hadizadeh.positioning.roommodel.model.MapSegment;
 import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.LazyMapStorage;
+import de.hadizadeh.positioning.roommodel.storage.MapStorage;
+import de.hadizadeh.positioning.roommodel.storage.MappedMapStorage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 /**
  * Handles the persistence layer of room models
  */
 public abstract class RoomModelPersistence {
+    /**
+     * File formats of room models
+     */
+    public enum Format {
+        /**
+         * Tab separated text with one line per segment
+         */
+        TEXT,
+        /**
+         * Tab separated text with one line per segment which has a material or a content, the size of the map is
+         * restored from the header line
+         */
+        SPARSE_TEXT,
+        /**
+         * Binary file with a material dictionary and run length encoded rows
+         */
+        BINARY
+    }
 
+    protected static final String HEADER = "x\ty\tz\tmaterial";
+    protected static final String ROWS = "rows";
+    protected static final String COLUMNS = "columns";
+    protected static final String FLOORS = "floors";
+    protected static final String FLOOR_HEIGHT = "floorHeight";
     /**
-     * Saves a room model map to a file
+     * Suffix of the journal of incremental saves next to a room model file
+     */
+    public static final String JOURNAL_SUFFIX = ".journal";
+    /**
+     * Default journal size from which on the whole file is saved again
+     */
+    public static final long DEFAULT_JOURNAL_COMPACTION_SIZE = 1 << 22;
+
+    protected ForkJoinPool forkJoinPool;
+    protected boolean incrementalSaving;
+    protected long journalCompactionSize = DEFAULT_JOURNAL_COMPACTION_SIZE;
+    protected BackgroundSaver backgroundSaver;
+    protected final Object contentLookupLock = new Object();
+
+    /**
+     * Saves a room model map to a text file
      *
      * @param filename filename
      * @param map      room model map
@@ -25,40 +78,394 @@ public abstract class RoomModelPersistence {
      * @throws ContentPersistenceException if the content of the map is incorrect
      */
     public void save(String filename, Map map) throws IOException, ContentPersistenceException {
-        FileOutputStream fos = new FileOutputStream(new File(filename));
-        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos));
-        bw.write("x\ty\tz\tmaterial");
-        bw.newLine();
-        MapSegment[][][] mapSegments = map.getMapSegments();
-        int rows = map.getRows();
-        int columns = map.getColumns();
-        int floors = map.getFloors();
-        int floorHeight = map.getFloorHeight();
+        save(filename, map, Format.TEXT);
+    }
+
+    /**
+     * Saves a room model map to a file
+     *
+     * @param filename filename
+     * @param map      room model map
+     * @param format   file format
+     * @throws IOException                 if the file could not be created
+     * @throws ContentPersistenceException if the content of the map is incorrect
+     */
+    public void save(String filename, Map map, Format format) throws IOException, ContentPersistenceException {
+        updatePositions(map.getStorage(), map.getFloorHeight(), map.getChangeSet());
+        if (save(filename, map.getStorage(), map.getFloorHeight(), map.getChangeSet(), format) && incrementalSaving) {
+            map.setChangeSet(new MapChangeSet(map.getFloors()));
+        }
+    }
+
+    /**
+     * Saves the segments of a storage to a file, e.g. a snapshot of a map. The position hooks are not called, the
+     * positions have to be updated with updatePositions before.
+     *
+     * @param filename    filename
+     * @param storage     segments of the map
+     * @param floorHeight height of each floor
+     * @param changeSet   changes of the map since the last save or null
+     * @param format      file format
+     * @return true, if the whole file has been written, false if the changes have been appended to the journal
+     * @throws IOException                 if the file could not be created
+     * @throws ContentPersistenceException if the content of the map is incorrect
+     */
+    protected boolean save(String filename, MapStorage storage, int floorHeight, MapChangeSet changeSet, Format format) throws IOException, ContentPersistenceException {
+        if (incrementalSaving && appendJournal(filename, storage, floorHeight, changeSet)) {
+            return false;
+        }
+        if (format == Format.BINARY) {
+            saveBinary(filename, storage, floorHeight);
+        } else {
+            saveText(filename, storage, floorHeight, format == Format.SPARSE_TEXT);
+        }
+        new File(filename + JOURNAL_SUFFIX).delete();
+        return true;
+    }
+
+    /**
+     * Saves a room model map to a file in the background. A snapshot of the storage of the map is taken in the calling
+     * thread, so the map can be edited while it is saved. Packed storages share their tiles with the snapshot, other
+     * storages are copied completely in the calling thread (see MapStorage.snapshot). The position hooks
+     * (removeAllPositions, addPosition, removePosition) are called with the snapshot in the calling thread as well, so
+     * they do not have to be thread safe. Only the file is written in the background. If the previous save of the file
+     * has not started yet, it is replaced by this save.
+     *
+     * @param filename filename
+     * @param map      room model map
+     * @param format   file format
+     * @return future which is done when the file has been saved
+     */
+    public Future<Void> saveAsync(final String filename, Map map, final Format format) {
+        final MapStorage snapshot = map.getStorage().snapshot();
+        final int floorHeight = map.getFloorHeight();
+        final MapChangeSet changeSet = map.getChangeSet();
+        updatePositions(snapshot, floorHeight, changeSet);
+        if (changeSet != null) {
+            map.setChangeSet(new MapChangeSet(map.getFloors()));
+        }
+        final MapChangeSet laterChanges = map.getChangeSet();
+        return getBackgroundSaver().submit(new File(filename).getAbsolutePath(), new BackgroundSaver.Save() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    save(filename, snapshot, floorHeight, changeSet, format);
+                } catch (Exception e) {
+                    if (laterChanges != null) {
+                        laterChanges.markStructureChanged();
+                    }
+                    throw e;
+                } finally {
+                    snapshot.release();
+                }
+                return null;
+            }
+
+            @Override
+            protected void replacedBy(BackgroundSaver.Save newerSave) {
+                snapshot.release();
+                if (changeSet != null && laterChanges != null) {
+                    laterChanges.merge(changeSet);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the saver which runs the background saves
+     *
+     * @return background saver, a saver with one daemon thread is created on the first call
+     */
+    public synchronized BackgroundSaver getBackgroundSaver() {
+        if (backgroundSaver == null) {
+            backgroundSaver = new BackgroundSaver();
+        }
+        return backgroundSaver;
+    }
+
+    /**
+     * Sets the saver which runs the background saves, e.g. one which is shared with the content controller
+     *
+     * @param backgroundSaver background saver
+     */
+    public synchronized void setBackgroundSaver(BackgroundSaver backgroundSaver) {
+        this.backgroundSaver = backgroundSaver;
+    }
+
+    /**
+     * Enables incremental saves. Loaded and saved maps collect their changes, and save only appends the changed
+     * segments to a journal next to the file. The whole file is written again (and the journal is removed) after
+     * changes of the size or the floors of the map or if the journal is larger than the compaction size.
+     *
+     * @param incrementalSaving true, if changes should be appended to a journal
+     */
+    public void setIncrementalSaving(boolean incrementalSaving) {
+        this.incrementalSaving = incrementalSaving;
+    }
+
+    /**
+     * Sets the size of the journal from which on the next save writes the whole file again
+     *
+     * @param journalCompactionSize size in bytes
+     */
+    public void setJournalCompactionSize(long journalCompactionSize) {
+        this.journalCompactionSize = journalCompactionSize;
+    }
+
+    /**
+     * Appends the changed segments of a map to the journal of a file
+     *
+     * @param filename    filename
+     * @param storage     segments of the map
+     * @param floorHeight height of each floor
+     * @param changeSet   changes of the map since the last save or null
+     * @return true, if the changes have been appended, false if the whole file has to be saved
+     * @throws IOException                 if the journal could not be written
+     * @throws ContentPersistenceException if the content of the map is incorrect
+     */
+    protected boolean appendJournal(String filename, MapStorage storage, int floorHeight, MapChangeSet changeSet) throws IOException, ContentPersistenceException {
+        File file = new File(filename);
+        File journal = new File(filename + JOURNAL_SUFFIX);
+        if (changeSet == null || changeSet.isStructureChanged() || !file.exists() || journal.length() > journalCompactionSize) {
+            return false;
+        }
+        int count = changeSet.getChangedCount();
+        if (count == 0) {
+            return true;
+        }
+        int columns = storage.getColumns();
+        if (journal.length() > 0 && !isJournalOf(journal, file)) {
+            journal.delete();
+        }
+        boolean newJournal = journal.length() == 0;
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal, true), 1 << 16));
+        try {
+            if (newJournal) {
+                outputStream.writeInt(RoomModelBinaryFormat.JOURNAL_MAGIC);
+                outputStream.writeLong(file.length());
+                outputStream.writeLong(file.lastModified());
+                outputStream.writeInt(storage.getRows());
+                outputStream.writeInt(columns);
+                outputStream.writeInt(storage.getFloors());
+            }
+            RoomModelBinaryFormat.writeVarInt(outputStream, count);
+            for (int floor = 0; floor < storage.getFloors(); floor++) {
+                BitSet changedSegments = changeSet.getChangedSegments(floor);
+                for (int index = changedSegments.nextSetBit(0); index >= 0; index = changedSegments.nextSetBit(index + 1)) {
+                    int row = index / columns;
+                    int column = index % columns;
+                    Material material = storage.getMaterial(floor, row, column);
+                    RoomModelBinaryFormat.writeVarInt(outputStream, floor);
+                    RoomModelBinaryFormat.writeVarInt(outputStream, index);
+                    outputStream.writeUTF(material == null ? "" : material.getName());
+                }
+            }
+        } finally {
+            outputStream.close();
+        }
+        changeSet.clear();
+        return true;
+    }
+
+    /**
+     * Connects the contents of a map to their positions with the position hooks. If the change set only contains
+     * changes of single segments and positions can be removed one by one, only the positions of the changed segments
+     * are updated. Otherwise all positions are removed and connected again.
+     *
+     * @param storage     segments of the map
+     * @param floorHeight height of each floor
+     * @param changeSet   changes of the map since the last save or null
+     */
+    protected void updatePositions(MapStorage storage, int floorHeight, MapChangeSet changeSet) {
+        int columns = storage.getColumns();
+        MappingPoint mappingPoint = new MappingPoint(0, 0, 0);
+        if (changeSet != null && !changeSet.isStructureChanged()) {
+            if (!changeSet.isContentChanged() || changeSet.getChangedCount() == 0) {
+                return;
+            }
+            int floor = 0;
+            while (changeSet.getChangedSegments(floor).isEmpty()) {
+                floor++;
+            }
+            int index = changeSet.getChangedSegments(floor).nextSetBit(0);
+            mappingPoint.setX(index % columns);
+            mappingPoint.setY(index / columns);
+            mappingPoint.setZ(floor * floorHeight);
+            if (removePosition(mappingPoint)) {
+                for (floor = 0; floor < storage.getFloors(); floor++) {
+                    BitSet changedSegments = changeSet.getChangedSegments(floor);
+                    for (index = changedSegments.nextSetBit(0); index >= 0; index = changedSegments.nextSetBit(index + 1)) {
+                        mappingPoint.setX(index % columns);
+                        mappingPoint.setY(index / columns);
+                        mappingPoint.setZ(floor * floorHeight);
+                        removePosition(mappingPoint);
+                        ContentElement content = storage.getContent(floor, index / columns, index % columns);
+                        if (content != null) {
+                            addPosition(content, mappingPoint);
+                        }
+                    }
+                }
+                return;
+            }
+        }
         removeAllPositions();
-        int zEnd = floors * floorHeight - floorHeight;
-        for (int z = 0; z <= zEnd; z += floorHeight) {
-            for (int row = 0; row < rows; row++) {
+        for (int floor = 0; floor < storage.getFloors(); floor++) {
+            for (int row = 0; row < storage.getRows(); row++) {
                 for (int column = 0; column < columns; column++) {
-                    String materialName = "";
-                    if (mapSegments[z / floorHeight][row][column].getMaterial() != null) {
-                        materialName = mapSegments[z / floorHeight][row][column].getMaterial().getName();
+                    ContentElement content = storage.getContent(floor, row, column);
+                    if (content != null) {
+                        mappingPoint.setX(column);
+                        mappingPoint.setY(row);
+                        mappingPoint.setZ(floor * floorHeight);
+                        addPosition(content, mappingPoint);
                     }
-                    bw.write(column + "\t" + row + "\t" + z + "\t" + materialName);
-                    if (!(z == zEnd && row == rows - 1 && column == columns - 1)) {
-                        bw.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers the information if a journal has been written for the current version of a file
+     *
+     * @param journal journal
+     * @param file    room model file
+     * @return true, if the journal belongs to the file
+     * @throws IOException if the journal could not be read
+     */
+    protected boolean isJournalOf(File journal, File file) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(journal));
+        try {
+            return inputStream.readInt() == RoomModelBinaryFormat.JOURNAL_MAGIC && inputStream.readLong() == file.length() && inputStream.readLong() == file.lastModified();
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Applies the changes of the journal of a file to a loaded map. Journals which have been written for an older
+     * version of the file are ignored, as well as an incomplete last save.
+     *
+     * @param filename      filename
+     * @param map           loaded room model map
+     * @param materialNames available materials by name
+     * @param contentIndex  index of the content positions or null, if the contents are looked up with getContent
+     * @throws IOException if the journal could not be read
+     */
+    protected void replayJournal(String filename, Map map, java.util.Map<String, Material> materialNames, ContentPositionIndex contentIndex) throws IOException {
+        TreeMap<Long, Material> changes = readJournal(filename, map.getRows(), map.getColumns(), map.getFloors(), materialNames);
+        if (changes == null) {
+            return;
+        }
+        long segments = (long) map.getRows() * map.getColumns();
+        MappingPoint mappingPoint = new MappingPoint(0, 0, 0);
+        for (java.util.Map.Entry<Long, Material> change : changes.entrySet()) {
+            int floor = (int) (change.getKey() / segments);
+            int row = (int) (change.getKey() % segments / map.getColumns());
+            int column = (int) (change.getKey() % map.getColumns());
+            map.setMaterial(floor, row, column, change.getValue());
+            mappingPoint.setX(column);
+            mappingPoint.setY(row);
+            mappingPoint.setZ(floor * map.getFloorHeight());
+            map.setContent(floor, row, column, resolveContent(mappingPoint, contentIndex));
+        }
+    }
+
+    /**
+     * Reads the last material of every segment of the journal of a file. Journals which have been written for an
+     * older version of the file are ignored, as well as an incomplete last save.
+     *
+     * @param filename      filename
+     * @param rows          amount of rows of the file
+     * @param columns       amount of columns of the file
+     * @param floors        amount of floors of the file
+     * @param materialNames available materials by name
+     * @return materials by segment number (floor * rows * columns + row * columns + column) or null, if the file has
+     * no journal
+     * @throws IOException if the journal could not be read
+     */
+    protected TreeMap<Long, Material> readJournal(String filename, int rows, int columns, int floors, java.util.Map<String, Material> materialNames) throws IOException {
+        File file = new File(filename);
+        File journal = new File(filename + JOURNAL_SUFFIX);
+        if (journal.length() == 0 || !isJournalOf(journal, file)) {
+            return null;
+        }
+        TreeMap<Long, Material> changes = new TreeMap<Long, Material>();
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(journal), 1 << 16));
+        try {
+            inputStream.skipBytes(20);
+            if (inputStream.readInt() != rows || inputStream.readInt() != columns || inputStream.readInt() != floors) {
+                throw new IOException("Room model journal does not match the size of the map: " + journal);
+            }
+            int segments = rows * columns;
+            while (true) {
+                long[] keys;
+                Material[] materials;
+                try {
+                    int count = RoomModelBinaryFormat.readVarInt(inputStream);
+                    keys = new long[count];
+                    materials = new Material[count];
+                    for (int i = 0; i < count; i++) {
+                        int floor = RoomModelBinaryFormat.readVarInt(inputStream);
+                        int index = RoomModelBinaryFormat.readVarInt(inputStream);
+                        materials[i] = materialNames.get(inputStream.readUTF());
+                        if (floor >= floors || index >= segments) {
+                            throw new IOException("Room model journal is corrupted: " + journal);
+                        }
+                        keys[i] = (long) floor * segments + index;
                     }
-                    ContentElement content = mapSegments[z / floorHeight][row][column].getContent();
-                    if (content != null) {
-                        addPosition(content, new MappingPoint(column, row, z));
+                } catch (EOFException e) {
+                    return changes;
+                }
+                for (int i = 0; i < keys.length; i++) {
+                    changes.put(keys[i], materials[i]);
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Saves a room model map to a text file. The lines are encoded directly into a byte buffer and one position is
+     * reused for all connected contents.
+     *
+     * @param filename    filename
+     * @param storage     segments of the map
+     * @param floorHeight height of each floor
+     * @param sparse      true, if segments without material and content should be skipped
+     * @throws IOException                 if the file could not be created
+     * @throws ContentPersistenceException if the content of the map is incorrect
+     */
+    protected void saveText(String filename, MapStorage storage, int floorHeight, boolean sparse) throws IOException, ContentPersistenceException {
+        RoomModelTextWriter writer = new RoomModelTextWriter(new FileOutputStream(new File(filename)));
+        try {
+            int rows = storage.getRows();
+            int columns = storage.getColumns();
+            int floors = storage.getFloors();
+            writer.write(HEADER + "\t" + ROWS + "=" + rows + "\t" + COLUMNS + "=" + columns + "\t" + FLOORS + "=" + floors + "\t" + FLOOR_HEIGHT + "=" + floorHeight);
+            for (int floor = 0; floor < floors; floor++) {
+                int z = floor * floorHeight;
+                for (int row = 0; row < rows; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        Material material = storage.getMaterial(floor, row, column);
+                        if (!sparse || material != null || storage.getContent(floor, row, column) != null) {
+                            writer.newLine();
+                            writer.writeSegment(column, row, z, material);
+                        }
                     }
                 }
             }
+        } finally {
+            writer.close();
         }
-        bw.close();
     }
 
     /**
-     * Loads room model map data from a file to objects
+     * Loads room model map data from a file to objects. The format of the file (text or binary) is detected
+     * automatically, text files are read in a single streaming pass. The contents are assigned with the index of
+     * createContentIndex, if there is one. The changes of an incremental save journal are applied afterwards.
      *
      * @param filename  persistence file name
      * @param materials available materials
@@ -67,71 +474,929 @@ public abstract class RoomModelPersistence {
      * @throws ArrayIndexOutOfBoundsException room model file is corrupted
      */
     public Map load(String filename, List<Material> materials) throws IOException, ArrayIndexOutOfBoundsException {
-        BufferedReader br = new BufferedReader(new FileReader(new File(filename)));
-        String line;
-        String lastLine = "";
-        String[] parts;
-        int floors = 0;
-        int z = 0;
-        int lastZ = -1;
-        int floorHeight = 0;
-        br.readLine();
-        while ((line = br.readLine()) != null) {
-            lastLine = line;
-            parts = line.split("\t");
-            z = Integer.parseInt(parts[2]);
-            if (z != lastZ) {
-                floorHeight = z - lastZ;
-                floors++;
-            }
-            lastZ = z;
-        }
-        br.close();
-        br = new BufferedReader(new FileReader(new File(filename)));
-        parts = lastLine.split("\t");
-        int columns = Integer.parseInt(parts[0]) + 1;
-        int rows = Integer.parseInt(parts[1]) + 1;
-        Map map = createMap(rows, columns, floors, floorHeight);
-        MapSegment[][][] mapSegments = map.getMapSegments();
-
-        int column = 0;
-        int row = 0;
-        String materialName = "";
-        br.readLine();
+        return load(filename, materials, false);
+    }
+
+    /**
+     * Loads room model map data like load, but text files are memory mapped and parsed directly from the mapped bytes
+     * and in parallel, if a fork join pool is set. Intended for bulk imports of many files. The mapping is only
+     * released when the buffer is garbage collected, on some platforms (e.g. Windows) the file can not be written
+     * until then.
+     *
+     * @param filename  persistence file name
+     * @param materials available materials
+     * @return room model map
+     * @throws IOException                    if the file could not be read
+     * @throws ArrayIndexOutOfBoundsException room model file is corrupted
+     */
+    public Map loadTextMapped(String filename, List<Material> materials) throws IOException, ArrayIndexOutOfBoundsException {
+        return load(filename, materials, true);
+    }
+
+    /**
+     * Loads room model map data from a file to objects
+     *
+     * @param filename  persistence file name
+     * @param materials available materials
+     * @param mapped    true, if text files should be memory mapped
+     * @return room model map
+     * @throws IOException                    if the file could not be read
+     * @throws ArrayIndexOutOfBoundsException room model file is corrupted
+     */
+    protected Map load(String filename, List<Material> materials, boolean mapped) throws IOException, ArrayIndexOutOfBoundsException {
+        RandomAccessFile file = new RandomAccessFile(new File(filename), "r");
+        ContentPositionIndex contentIndex = createContentIndex();
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            java.util.Map<String, Material> materialNames = new HashMap<String, Material>();
+            for (Material material : materials) {
+                materialNames.put(material.getName(), material);
+            }
+            Map map;
+            if (channel.read(magic, 0) == 4 && magic.getInt(0) == RoomModelBinaryFormat.MAGIC) {
+                map = loadBinary(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16)), materialNames, contentIndex);
+            } else {
+                RoomModelTextReader reader;
+                if (mapped && size <= Integer.MAX_VALUE) {
+                    reader = new RoomModelTextReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                } else {
+                    reader = new RoomModelTextReader(Channels.newInputStream(channel));
+                }
+                map = loadText(reader, new MaterialNameIndex(materials, RoomModelTextReader.CHARSET), filename, contentIndex);
+            }
+            replayJournal(filename, map, materialNames, contentIndex);
+            if (incrementalSaving) {
+                map.setChangeSet(new MapChangeSet(map.getFloors()));
+            }
+            return map;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads all segments of a file without creating a map. The segments are visited in the order of the file (floor,
+     * row, column) with constant memory, the changes of an incremental save journal included. Sparse text files only
+     * deliver the saved segments. The format of the file is detected automatically.
+     *
+     * @param filename  persistence file name
+     * @param materials available materials
+     * @param visitor   visitor of the segments, unknown materials are delivered as null
+     * @throws IOException if the file could not be read
+     */
+    public void read(String filename, List<Material> materials, Map.SegmentVisitor visitor) throws IOException {
         java.util.Map<String, Material> materialNames = new HashMap<String, Material>();
         for (Material material : materials) {
             materialNames.put(material.getName(), material);
         }
-        MappingPoint mappingPoint = new MappingPoint(column, row, z);
-        while ((line = br.readLine()) != null) {
-            parts = line.split("\t");
-            column = Integer.parseInt(parts[0]);
-            row = Integer.parseInt(parts[1]);
-            z = Integer.parseInt(parts[2]);
-            if (parts.length > 3) {
-                materialName = parts[3];
-                mapSegments[z / floorHeight][row][column].setMaterial(materialNames.get(materialName));
+        BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(filename), 1 << 16);
+        ContentPositionIndex contentIndex = createContentIndex();
+        try {
+            inputStream.mark(4);
+            DataInputStream dataInputStream = new DataInputStream(inputStream);
+            boolean binary;
+            try {
+                binary = dataInputStream.readInt() == RoomModelBinaryFormat.MAGIC;
+            } catch (EOFException e) {
+                binary = false;
+            }
+            inputStream.reset();
+            if (binary) {
+                readBinary(dataInputStream, filename, materialNames, visitor, contentIndex);
+            } else {
+                readText(new RoomModelTextReader(inputStream), filename, materials, materialNames, visitor, contentIndex);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Reads all segments of a text file
+     *
+     * @param reader        reader of the file
+     * @param filename      persistence file name
+     * @param materials     available materials
+     * @param materialNames available materials by name
+     * @param visitor       visitor of the segments
+     * @param contentIndex  index of the content positions or null, if the contents are looked up with getContent
+     * @throws IOException if the file could not be read
+     */
+    protected void readText(RoomModelTextReader reader, String filename, List<Material> materials, java.util.Map<String, Material> materialNames, Map.SegmentVisitor visitor, ContentPositionIndex contentIndex) throws IOException {
+        if (!reader.nextLine()) {
+            throw new IOException("Room model file is empty: " + filename);
+        }
+        int[] dimensions = parseDimensions(reader.restOfLine());
+        SegmentStream stream;
+        if (dimensions != null) {
+            stream = new SegmentStream(visitor, dimensions[0], dimensions[1], dimensions[3], readJournal(filename, dimensions[0], dimensions[1], dimensions[2], materialNames), contentIndex);
+        } else {
+            stream = new SegmentStream(visitor, 0, 0, 0, null, contentIndex);
+        }
+        MaterialNameIndex materialNameIndex = new MaterialNameIndex(materials, RoomModelTextReader.CHARSET);
+        int floor = -1;
+        int lastZ = 0;
+        while (reader.nextLine()) {
+            int column = reader.nextInt();
+            int row = reader.nextInt();
+            int z = reader.nextInt();
+            Material material = reader.nextMaterial(materialNameIndex);
+            if (dimensions != null) {
+                floor = z / dimensions[3];
+            } else if (floor < 0 || z != lastZ) {
+                floor++;
+                lastZ = z;
+            }
+            stream.visit(floor, row, column, z, material);
+        }
+        stream.finish();
+    }
+
+    /**
+     * Reads all segments of a binary file
+     *
+     * @param inputStream   stream of the file
+     * @param filename      persistence file name
+     * @param materialNames available materials by name
+     * @param visitor       visitor of the segments
+     * @param contentIndex  index of the content positions or null, if the contents are looked up with getContent
+     * @throws IOException if the file could not be read
+     */
+    protected void readBinary(DataInputStream inputStream, String filename, java.util.Map<String, Material> materialNames, Map.SegmentVisitor visitor, ContentPositionIndex contentIndex) throws IOException {
+        RoomModelBinaryFormat.Header header = RoomModelBinaryFormat.Header.read(inputStream);
+        int rows = header.getRows();
+        int columns = header.getColumns();
+        int floors = header.getFloors();
+        int floorHeight = header.getFloorHeight();
+        Material[] dictionary = createDictionary(header, materialNames);
+        SegmentStream stream = new SegmentStream(visitor, rows, columns, floorHeight, readJournal(filename, rows, columns, floors, materialNames), contentIndex);
+        for (int floor = 0; floor < floors; floor++) {
+            DataInput floorInput = inputStream;
+            if (header.hasFloorIndex()) {
+                floorInput = new DataInputStream(new ByteArrayInputStream(readFloor(inputStream, header, floor)));
+            }
+            for (int row = 0; row < rows; row++) {
+                int column = 0;
+                while (column < columns) {
+                    int length = RoomModelBinaryFormat.readVarInt(floorInput);
+                    int id = RoomModelBinaryFormat.readVarInt(floorInput);
+                    if (length <= 0 || column + length > columns || id >= dictionary.length) {
+                        throw new IOException("Room model file is corrupted, invalid run in row " + row + " of floor " + floor);
+                    }
+                    for (int end = column + length; column < end; column++) {
+                        stream.visit(floor, row, column, floor * floorHeight, dictionary[id]);
+                    }
+                }
+            }
+        }
+        stream.finish();
+    }
+
+    /**
+     * Delivers the segments of a file to a visitor. The contents are looked up for every segment, the changes of a
+     * journal are merged into the segments of the file, which have to be sorted by floor, row and column.
+     */
+    protected class SegmentStream {
+        protected Map.SegmentVisitor visitor;
+        protected int rows;
+        protected int columns;
+        protected int floorHeight;
+        protected TreeMap<Long, Material> journal;
+        protected ContentPositionIndex contentIndex;
+        protected long nextJournalSegment;
+        protected MappingPoint mappingPoint;
+
+        /**
+         * Creates a stream
+         *
+         * @param visitor      visitor of the segments
+         * @param rows         amount of rows
+         * @param columns      amount of columns
+         * @param floorHeight  height of each floor
+         * @param journal      materials of the journal by segment number or null
+         * @param contentIndex index of the content positions or null, if the contents are looked up with getContent
+         */
+        protected SegmentStream(Map.SegmentVisitor visitor, int rows, int columns, int floorHeight, TreeMap<Long, Material> journal, ContentPositionIndex contentIndex) {
+            this.visitor = visitor;
+            this.rows = rows;
+            this.columns = columns;
+            this.floorHeight = floorHeight;
+            this.journal = journal;
+            this.contentIndex = contentIndex;
+            nextJournalSegment = journal == null || journal.isEmpty() ? Long.MAX_VALUE : journal.firstKey();
+            mappingPoint = new MappingPoint(0, 0, 0);
+        }
+
+        /**
+         * Delivers a segment of the file and the changed segments of the journal in front of it
+         *
+         * @param floor    floor number
+         * @param row      row number
+         * @param column   column number
+         * @param z        height of the floor
+         * @param material material of the file
+         */
+        protected void visit(int floor, int row, int column, int z, Material material) {
+            if (nextJournalSegment != Long.MAX_VALUE) {
+                long segment = ((long) floor * rows + row) * columns + column;
+                while (nextJournalSegment < segment) {
+                    visitJournalSegment();
+                }
+                if (nextJournalSegment == segment) {
+                    material = journal.get(segment);
+                    nextJournalSegment();
+                }
+            }
+            deliver(floor, row, column, z, material);
+        }
+
+        /**
+         * Delivers the changed segments of the journal after the last segment of the file
+         */
+        protected void finish() {
+            while (nextJournalSegment != Long.MAX_VALUE) {
+                visitJournalSegment();
+            }
+        }
+
+        protected void visitJournalSegment() {
+            long segment = nextJournalSegment;
+            int floor = (int) (segment / ((long) rows * columns));
+            deliver(floor, (int) (segment / columns % rows), (int) (segment % columns), floor * floorHeight, journal.get(segment));
+            nextJournalSegment();
+        }
+
+        protected void nextJournalSegment() {
+            Long next = journal.higherKey(nextJournalSegment);
+            nextJournalSegment = next == null ? Long.MAX_VALUE : next;
+        }
+
+        protected void deliver(int floor, int row, int column, int z, Material material) {
+            mappingPoint.setX(column);
+            mappingPoint.setY(row);
+            mappingPoint.setZ(z);
+            visitor.visit(floor, row, column, material, resolveContent(mappingPoint, contentIndex));
+        }
+    }
+
+    /**
+     * Loads a text file in one pass. The size of the map is taken from the header line or, for files without size
+     * fields, from the first floor which is buffered until it is complete.
+     *
+     * @param reader        reader of the file
+     * @param materialNames available materials by encoded name
+     * @param filename      persistence file name
+     * @param contentIndex  index of the content positions or null, if the contents are looked up with getContent
+     * @return room model map
+     * @throws IOException if the file could not be read
+     */
+    protected Map loadText(RoomModelTextReader reader, MaterialNameIndex materialNames, String filename, ContentPositionIndex contentIndex) throws IOException {
+        if (!reader.nextLine()) {
+            throw new IOException("Room model file is empty: " + filename);
+        }
+        int[] dimensions = parseDimensions(reader.restOfLine());
+        Map map = null;
+        int floorHeight = 0;
+        if (dimensions != null) {
+            floorHeight = dimensions[3];
+            map = createMap(dimensions[0], dimensions[1], dimensions[2], floorHeight);
+            if (forkJoinPool != null && reader.isBuffered()) {
+                loadTextParallel(reader, map, materialNames, contentIndex);
+                return map;
+            }
+        }
+        MappingPoint mappingPoint = new MappingPoint(0, 0, 0);
+        int bufferedCount = 0;
+        int[] bufferedColumns = new int[1024];
+        int[] bufferedRows = new int[1024];
+        Material[] bufferedMaterials = new Material[1024];
+        int firstZ = 0;
+        int lastZ = 0;
+        int floor = 0;
+        while (reader.nextLine()) {
+            int column = reader.nextInt();
+            int row = reader.nextInt();
+            int z = reader.nextInt();
+            Material material = reader.nextMaterial(materialNames);
+            if (map == null) {
+                if (bufferedCount == 0) {
+                    firstZ = z;
+                    lastZ = z;
+                }
+                if (z == firstZ) {
+                    if (bufferedCount == bufferedColumns.length) {
+                        bufferedColumns = Arrays.copyOf(bufferedColumns, bufferedCount * 2);
+                        bufferedRows = Arrays.copyOf(bufferedRows, bufferedCount * 2);
+                        bufferedMaterials = Arrays.copyOf(bufferedMaterials, bufferedCount * 2);
+                    }
+                    bufferedColumns[bufferedCount] = column;
+                    bufferedRows[bufferedCount] = row;
+                    bufferedMaterials[bufferedCount++] = material;
+                    continue;
+                }
+                floorHeight = z - firstZ;
+                map = createBufferedMap(bufferedCount, bufferedColumns, bufferedRows, bufferedMaterials, firstZ, floorHeight, mappingPoint, contentIndex);
+            } else if (dimensions != null) {
+                floor = z / floorHeight;
+            }
+            if (dimensions == null && z != lastZ) {
+                map.addFloor();
+                floor++;
+                lastZ = z;
+            }
+            loadSegment(map, floor, row, column, z, material, mappingPoint, contentIndex);
+        }
+        if (map == null) {
+            if (bufferedCount == 0) {
+                throw new IOException("Room model file contains no segments: " + filename);
+            }
+            map = createBufferedMap(bufferedCount, bufferedColumns, bufferedRows, bufferedMaterials, firstZ, firstZ + 1, mappingPoint, contentIndex);
+        }
+        return map;
+    }
+
+    /**
+     * Loads the segments of a memory mapped text file with a size header in parallel. The file is split at the lines
+     * where floors or bands of rows start, the bands are aligned to the storage blocks. Every chunk is parsed in its
+     * own task and written directly into the storage, so the result is the same as a sequential load.
+     *
+     * @param reader        reader of the file after the header line
+     * @param map           map of the size of the header
+     * @param materialNames available materials by encoded name
+     * @param contentIndex  index of the content positions or null, if the contents are looked up with getContent
+     * @throws IOException if the file could not be read
+     */
+    protected void loadTextParallel(RoomModelTextReader reader, Map map, final MaterialNameIndex materialNames, final ContentPositionIndex contentIndex) throws IOException {
+        final MapStorage storage = map.getStorage();
+        final int rows = map.getRows();
+        final int floorHeight = map.getFloorHeight();
+        storage.registerMaterials(materialNames.getMaterials());
+        int chunksPerFloor = Math.max(1, (forkJoinPool.getParallelism() * 4 + map.getFloors() - 1) / map.getFloors());
+        int bandRows = Math.max(1, rows / chunksPerFloor);
+        List<Integer> chunkStarts = new ArrayList<Integer>();
+        int dataStart = reader.getNextLineStart();
+        for (int floor = 0; floor < map.getFloors(); floor++) {
+            for (int row = 0; row < rows; ) {
+                int start = findLine(reader, dataStart, floor, row, rows, floorHeight);
+                if (chunkStarts.isEmpty() || chunkStarts.get(chunkStarts.size() - 1) < start) {
+                    chunkStarts.add(start);
+                }
+                row += bandRows;
+                while (row < rows && storage.getRowBandStart(row) != row) {
+                    row++;
+                }
+            }
+        }
+        if (chunkStarts.isEmpty() || chunkStarts.get(0) != dataStart) {
+            chunkStarts.add(0, dataStart);
+        }
+        chunkStarts.add(reader.getBuffer().limit());
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i + 1 < chunkStarts.size(); i++) {
+            if (chunkStarts.get(i) < chunkStarts.get(i + 1)) {
+                final ByteBuffer chunk = reader.getBuffer().duplicate();
+                chunk.limit(chunkStarts.get(i + 1));
+                chunk.position(chunkStarts.get(i));
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        loadChunk(new RoomModelTextReader(chunk), storage, floorHeight, materialNames, contentIndex);
+                        return null;
+                    }
+                });
+            }
+        }
+        try {
+            for (Future<Void> future : forkJoinPool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Loading of the room model has been interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        map.markAllDirty();
+    }
+
+    /**
+     * Loads the lines of a chunk into the storage
+     *
+     * @param reader        reader of the chunk
+     * @param storage       storage of the map
+     * @param floorHeight   height of each floor
+     * @param materialNames available materials by encoded name
+     * @param contentIndex  index of the content positions or null, if the contents are looked up with getContent
+     * @throws IOException if the chunk could not be read
+     */
+    protected void loadChunk(RoomModelTextReader reader, MapStorage storage, int floorHeight, MaterialNameIndex materialNames, ContentPositionIndex contentIndex) throws IOException {
+        MappingPoint mappingPoint = new MappingPoint(0, 0, 0);
+        boolean concurrentContentLookup = contentIndex != null || isConcurrentContentLookup();
+        while (reader.nextLine()) {
+            int column = reader.nextInt();
+            int row = reader.nextInt();
+            int z = reader.nextInt();
+            Material material = reader.nextMaterial(materialNames);
+            int floor = z / floorHeight;
+            if (material != null) {
+                storage.setMaterial(floor, row, column, material);
             }
             mappingPoint.setX(column);
             mappingPoint.setY(row);
             mappingPoint.setZ(z);
-            ContentElement content = getContent(mappingPoint);
+            ContentElement content;
+            if (concurrentContentLookup) {
+                content = resolveContent(mappingPoint, contentIndex);
+            } else {
+                synchronized (contentLookupLock) {
+                    content = resolveContent(mappingPoint, contentIndex);
+                }
+            }
             if (content != null) {
-                mapSegments[z / floorHeight][row][column].setContent(content);
+                storage.setContent(floor, row, column, content);
             }
         }
-        map.setMapSegments(mapSegments);
-        br.close();
+    }
+
+    /**
+     * Finds the first line of a floor and row in a buffered text file with a binary search, the lines are sorted by
+     * floor, row and column
+     *
+     * @param reader      reader of the file
+     * @param dataStart   start of the first line after the header
+     * @param floor       floor number
+     * @param row         row number
+     * @param rows        amount of rows
+     * @param floorHeight height of each floor
+     * @return start of the line or the limit of the buffer
+     */
+    protected int findLine(RoomModelTextReader reader, int dataStart, int floor, int row, int rows, int floorHeight) {
+        long target = (long) floor * rows + row;
+        int limit = reader.getBuffer().limit();
+        int low = dataStart;
+        int high = limit;
+        int result = limit;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int lineStart = reader.lineStartAtOrAfter(middle);
+            int lineRow = lineStart < limit ? reader.peekInt(lineStart, 1) : Integer.MAX_VALUE;
+            int lineZ = lineStart < limit ? reader.peekInt(lineStart, 2) : Integer.MAX_VALUE;
+            if (lineRow != Integer.MAX_VALUE && lineZ != Integer.MAX_VALUE && (long) (lineZ / floorHeight) * rows + lineRow < target) {
+                low = reader.lineStartAtOrAfter(lineStart + 1);
+            } else {
+                result = lineStart;
+                high = middle;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the pool for loading text files with a size header in parallel by loadTextMapped. The lines of such files
+     * have to be sorted by floor, row and column, as written by save.
+     *
+     * @param forkJoinPool pool or null to load all files sequentially
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Delivers the information if getContent may be called by several threads at once. Otherwise, parallel and lazy
+     * loading call it (and createContentIndex) while the content lookup lock is held.
+     *
+     * @return true, if contents may be looked up concurrently
+     */
+    protected boolean isConcurrentContentLookup() {
+        return false;
+    }
+
+    /**
+     * Saves a room model map to a binary file with a material dictionary, run length encoded rows and an index of the
+     * floors, which is written after the data of all floors is known
+     *
+     * @param filename    filename
+     * @param storage     segments of the map
+     * @param floorHeight height of each floor
+     * @throws IOException                 if the file could not be created
+     * @throws ContentPersistenceException if the content of the map is incorrect
+     */
+    protected void saveBinary(String filename, MapStorage storage, int floorHeight) throws IOException, ContentPersistenceException {
+        int rows = storage.getRows();
+        int columns = storage.getColumns();
+        int floors = storage.getFloors();
+        java.util.Map<Material, Integer> materialIds = new LinkedHashMap<Material, Integer>();
+        for (int floor = 0; floor < floors; floor++) {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    Material material = storage.getMaterial(floor, row, column);
+                    if (material != null && !materialIds.containsKey(material)) {
+                        materialIds.put(material, materialIds.size() + 1);
+                    }
+                }
+            }
+        }
+        String[] materialNames = new String[materialIds.size()];
+        for (java.util.Map.Entry<Material, Integer> entry : materialIds.entrySet()) {
+            materialNames[entry.getValue() - 1] = entry.getKey().getName();
+        }
+        RoomModelBinaryFormat.Header header = new RoomModelBinaryFormat.Header(rows, columns, floors, floorHeight, materialNames);
+        int headerLength = header.toBytes().length;
+        RandomAccessFile file = new RandomAccessFile(new File(filename), "rw");
+        try {
+            file.setLength(0);
+            long offset = headerLength;
+            file.seek(offset);
+            ByteArrayOutputStream floorBytes = new ByteArrayOutputStream(1 << 16);
+            DataOutputStream outputStream = new DataOutputStream(floorBytes);
+            CRC32 crc = new CRC32();
+            for (int floor = 0; floor < floors; floor++) {
+                floorBytes.reset();
+                for (int row = 0; row < rows; row++) {
+                    int runStart = 0;
+                    Material runMaterial = storage.getMaterial(floor, row, 0);
+                    for (int column = 1; column <= columns; column++) {
+                        Material material = column < columns ? storage.getMaterial(floor, row, column) : null;
+                        if (column == columns || (material == null ? runMaterial != null : !material.equals(runMaterial))) {
+                            RoomModelBinaryFormat.writeVarInt(outputStream, column - runStart);
+                            RoomModelBinaryFormat.writeVarInt(outputStream, runMaterial == null ? 0 : materialIds.get(runMaterial));
+                            runStart = column;
+                            runMaterial = material;
+                        }
+                    }
+                }
+                crc.reset();
+                byte[] bytes = floorBytes.toByteArray();
+                crc.update(bytes);
+                file.write(bytes);
+                header.setFloor(floor, offset, bytes.length, (int) crc.getValue());
+                offset += bytes.length;
+            }
+            file.seek(0);
+            file.write(header.toBytes());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Loads a binary file. Runs of segments with a material are written as spans, the connected contents are loaded
+     * for every segment. The data of every floor is checked with its checksum before it is parsed, if the file has a
+     * floor index.
+     *
+     * @param inputStream   stream of the file
+     * @param materialNames available materials by name
+     * @param contentIndex  index of the content positions or null, if the contents are looked up with getContent
+     * @return room model map
+     * @throws IOException if the file could not be read or is corrupted
+     */
+    protected Map loadBinary(DataInputStream inputStream, java.util.Map<String, Material> materialNames, ContentPositionIndex contentIndex) throws IOException {
+        RoomModelBinaryFormat.Header header = RoomModelBinaryFormat.Header.read(inputStream);
+        Material[] dictionary = createDictionary(header, materialNames);
+        Map map = createMap(header.getRows(), header.getColumns(), header.getFloors(), header.getFloorHeight());
+        for (int floor = 0; floor < header.getFloors(); floor++) {
+            DataInput floorInput = inputStream;
+            if (header.hasFloorIndex()) {
+                floorInput = new DataInputStream(new ByteArrayInputStream(readFloor(inputStream, header, floor)));
+            }
+            loadFloor(floorInput, floor, header, dictionary, map.getStorage(), contentIndex);
+        }
+        map.markAllDirty();
         return map;
     }
 
+    /**
+     * Loads a binary file with a floor index lazily. Only the header is read, every floor is loaded, checked with its
+     * checksum and parsed when one of its segments is accessed for the first time. The file must not be changed
+     * while the map is used. The contents of a floor are looked up when the floor is loaded, only this lookup holds the
+     * content lookup lock, so loading a floor does not wait for saves. Files without floor index and text files are
+     * loaded completely with load.
+     *
+     * @param filename  persistence file name
+     * @param materials available materials
+     * @return room model map
+     * @throws IOException if the file could not be read or its header is corrupted
+     */
+    public Map loadLazily(final String filename, List<Material> materials) throws IOException {
+        final RoomModelBinaryFormat.Header header;
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(filename));
+        try {
+            header = RoomModelBinaryFormat.Header.read(inputStream);
+        } catch (IOException e) {
+            return load(filename, materials);
+        } finally {
+            inputStream.close();
+        }
+        if (!header.hasFloorIndex()) {
+            return load(filename, materials);
+        }
+        int lastFloor = header.getFloors() - 1;
+        if (new File(filename).length() < header.getFloorOffset(lastFloor) + header.getFloorLength(lastFloor)) {
+            throw new IOException("Room model file is corrupted, file is truncated: " + filename);
+        }
+        java.util.Map<String, Material> materialNames = new HashMap<String, Material>();
+        for (Material material : materials) {
+            materialNames.put(material.getName(), material);
+        }
+        final Material[] dictionary = createDictionary(header, materialNames);
+        LazyMapStorage storage = new LazyMapStorage(header.getRows(), header.getColumns(), header.getFloors(), new LazyMapStorage.FloorLoader() {
+            @Override
+            public void loadFloor(int floor, MapStorage storage) throws IOException {
+                RandomAccessFile file = new RandomAccessFile(new File(filename), "r");
+                byte[] bytes;
+                try {
+                    file.seek(header.getFloorOffset(floor));
+                    bytes = new byte[header.getFloorLength(floor)];
+                    file.readFully(bytes);
+                } finally {
+                    file.close();
+                }
+                RoomModelBinaryFormat.verifyChecksum(bytes, bytes.length, header.getFloorChecksum(floor), "floor " + floor);
+                ContentPositionIndex contentIndex;
+                synchronized (contentLookupLock) {
+                    contentIndex = createContentIndex();
+                }
+                RoomModelPersistence.this.loadFloor(new DataInputStream(new ByteArrayInputStream(bytes)), floor, header, dictionary, storage, contentIndex);
+            }
+        });
+        Map map = createMap(storage, header.getFloorHeight());
+        replayJournal(filename, map, materialNames, createContentIndex());
+        if (incrementalSaving) {
+            map.setChangeSet(new MapChangeSet(map.getFloors()));
+        }
+        return map;
+    }
+
+    /**
+     * Reads the data of a floor of a binary file with floor index and checks its checksum
+     *
+     * @param inputStream stream of the file behind the data of the previous floor
+     * @param header      header of the file
+     * @param floor       floor number
+     * @return data of the floor
+     * @throws IOException if the data could not be read or is corrupted
+     */
+    protected byte[] readFloor(DataInputStream inputStream, RoomModelBinaryFormat.Header header, int floor) throws IOException {
+        byte[] bytes = new byte[header.getFloorLength(floor)];
+        inputStream.readFully(bytes);
+        RoomModelBinaryFormat.verifyChecksum(bytes, bytes.length, header.getFloorChecksum(floor), "floor " + floor);
+        return bytes;
+    }
+
+    /**
+     * Parses the runs of a floor of a binary file into a storage and assigns the connected contents
+     *
+     * @param input        data of the floor
+     * @param floor        floor number
+     * @param header       header of the file
+     * @param dictionary   materials by id
+     * @param storage      storage of the map
+     * @param contentIndex index of the content positions or null, if the contents are looked up with getContent
+     * @throws IOException if the data is corrupted
+     */
+    protected void loadFloor(DataInput input, int floor, RoomModelBinaryFormat.Header header, Material[] dictionary, MapStorage storage, ContentPositionIndex contentIndex) throws IOException {
+        int columns = header.getColumns();
+        int z = floor * header.getFloorHeight();
+        MappingPoint mappingPoint = new MappingPoint(0, 0, z);
+        for (int row = 0; row < header.getRows(); row++) {
+            int column = 0;
+            while (column < columns) {
+                int length = RoomModelBinaryFormat.readVarInt(input);
+                int id = RoomModelBinaryFormat.readVarInt(input);
+                if (length <= 0 || column + length > columns || id >= dictionary.length) {
+                    throw new IOException("Room model file is corrupted, invalid run in row " + row + " of floor " + floor);
+                }
+                if (dictionary[id] != null) {
+                    storage.fillMaterial(floor, row, column, column + length - 1, dictionary[id]);
+                }
+                column += length;
+            }
+            for (column = 0; column < columns; column++) {
+                ContentElement content;
+                if (contentIndex != null) {
+                    content = contentIndex.get(column, row, z);
+                } else {
+                    mappingPoint.setX(column);
+                    mappingPoint.setY(row);
+                    if (isConcurrentContentLookup()) {
+                        content = getContent(mappingPoint);
+                    } else {
+                        synchronized (contentLookupLock) {
+                            content = getContent(mappingPoint);
+                        }
+                    }
+                }
+                if (content != null) {
+                    storage.setContent(floor, row, column, content);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the material dictionary of a binary file
+     *
+     * @param header        header of the file
+     * @param materialNames available materials by name
+     * @return materials by id, unknown materials are null
+     */
+    protected Material[] createDictionary(RoomModelBinaryFormat.Header header, java.util.Map<String, Material> materialNames) {
+        Material[] dictionary = new Material[header.getMaterialNames().length + 1];
+        for (int id = 1; id < dictionary.length; id++) {
+            dictionary[id] = materialNames.get(header.getMaterialNames()[id - 1]);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Saves a room model map to a memory mapped map file. If the map is already backed by this file, only the header
+     * and the dictionary are written, because all segments are already stored in the file.
+     *
+     * @param filename filename
+     * @param map      room model map
+     * @throws IOException                 if the file could not be created
+     * @throws ContentPersistenceException if the content of the map is incorrect
+     */
+    public void saveMapped(String filename, Map map) throws IOException, ContentPersistenceException {
+        File file = new File(filename);
+        MappedMapStorage storage;
+        boolean copy = !(map.getStorage() instanceof MappedMapStorage) || !((MappedMapStorage) map.getStorage()).getFile().getAbsoluteFile().equals(file.getAbsoluteFile());
+        if (copy) {
+            storage = MappedMapStorage.create(file, map.getRows(), map.getColumns(), map.getFloors());
+        } else {
+            storage = (MappedMapStorage) map.getStorage();
+        }
+        int floorHeight = map.getFloorHeight();
+        MappingPoint mappingPoint = new MappingPoint(0, 0, 0);
+        removeAllPositions();
+        for (int floor = 0; floor < map.getFloors(); floor++) {
+            for (int row = 0; row < map.getRows(); row++) {
+                for (int column = 0; column < map.getColumns(); column++) {
+                    ContentElement content = map.getContent(floor, row, column);
+                    if (copy) {
+                        storage.setMaterial(floor, row, column, map.getMaterial(floor, row, column));
+                        storage.setContent(floor, row, column, content);
+                    }
+                    if (content != null) {
+                        mappingPoint.setX(column);
+                        mappingPoint.setY(row);
+                        mappingPoint.setZ(floor * floorHeight);
+                        addPosition(content, mappingPoint);
+                    }
+                }
+            }
+        }
+        storage.setFloorHeight(floorHeight);
+        if (copy) {
+            storage.close();
+        } else {
+            storage.flush();
+        }
+    }
+
+    /**
+     * Opens a memory mapped map file. The segments are not read, they are loaded on demand while the map is used.
+     *
+     * @param filename  persistence file name
+     * @param materials available materials
+     * @param contents  available contents, they are assigned by their content number
+     * @return room model map which is backed by the file
+     * @throws IOException if the file could not be read
+     */
+    public Map loadMapped(String filename, List<Material> materials, List<ContentElement> contents) throws IOException {
+        MappedMapStorage storage = MappedMapStorage.open(new File(filename), materials, contents);
+        return createMap(storage, storage.getFloorHeight());
+    }
+
+    /**
+     * Reads the size fields of a header line
+     *
+     * @param header header line
+     * @return rows, columns, floors and floor height or null, if the header has no size fields
+     */
+    protected int[] parseDimensions(String header) {
+        int[] dimensions = new int[]{-1, -1, -1, -1};
+        String[] keys = new String[]{ROWS, COLUMNS, FLOORS, FLOOR_HEIGHT};
+        for (String field : header.split("\t")) {
+            int separator = field.indexOf('=');
+            if (separator > 0) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i].equals(field.substring(0, separator))) {
+                        dimensions[i] = Integer.parseInt(field.substring(separator + 1).trim());
+                    }
+                }
+            }
+        }
+        for (int dimension : dimensions) {
+            if (dimension <= 0) {
+                return null;
+            }
+        }
+        return dimensions;
+    }
+
+    /**
+     * Creates a map of one floor for a file without size fields and fills it with the buffered first floor
+     *
+     * @param bufferedCount     amount of buffered segments
+     * @param bufferedColumns   columns of the buffered segments
+     * @param bufferedRows      rows of the buffered segments
+     * @param bufferedMaterials materials of the buffered segments
+     * @param z                 height of the first floor
+     * @param floorHeight       height of each floor
+     * @param mappingPoint      reusable position for the content lookup
+     * @param contentIndex      index of the content positions or null, if the contents are looked up with getContent
+     * @return room model map
+     */
+    protected Map createBufferedMap(int bufferedCount, int[] bufferedColumns, int[] bufferedRows, Material[] bufferedMaterials, int z, int floorHeight, MappingPoint mappingPoint, ContentPositionIndex contentIndex) {
+        int rows = 0;
+        int columns = 0;
+        for (int i = 0; i < bufferedCount; i++) {
+            rows = Math.max(rows, bufferedRows[i] + 1);
+            columns = Math.max(columns, bufferedColumns[i] + 1);
+        }
+        Map map = createMap(rows, columns, 1, floorHeight);
+        for (int i = 0; i < bufferedCount; i++) {
+            loadSegment(map, 0, bufferedRows[i], bufferedColumns[i], z, bufferedMaterials[i], mappingPoint, contentIndex);
+        }
+        return map;
+    }
+
+    /**
+     * Sets the material and the connected content of a loaded segment
+     *
+     * @param map          room model map
+     * @param floor        floor number
+     * @param row          row number
+     * @param column       column number
+     * @param z            height of the floor
+     * @param material     material or null
+     * @param mappingPoint reusable position for the content lookup
+     * @param contentIndex index of the content positions or null, if the contents are looked up with getContent
+     */
+    protected void loadSegment(Map map, int floor, int row, int column, int z, Material material, MappingPoint mappingPoint, ContentPositionIndex contentIndex) {
+        if (material != null) {
+            map.setMaterial(floor, row, column, material);
+        }
+        mappingPoint.setX(column);
+        mappingPoint.setY(row);
+        mappingPoint.setZ(z);
+        ContentElement content = resolveContent(mappingPoint, contentIndex);
+        if (content != null) {
+            map.setContent(floor, row, column, content);
+        }
+    }
+
+    /**
+     * Returns the content of a loaded position, from the content index of the load or from getContent
+     *
+     * @param mappingPoint position (coordinates)
+     * @param contentIndex index of the content positions or null, if the contents are looked up with getContent
+     * @return content or null
+     */
+    protected ContentElement resolveContent(MappingPoint mappingPoint, ContentPositionIndex contentIndex) {
+        if (contentIndex != null) {
+            return contentIndex.get(mappingPoint.getX(), mappingPoint.getY(), mappingPoint.getZ());
+        }
+        return getContent(mappingPoint);
+    }
+
+    /**
+     * Creates an index of all content positions, which is used instead of getContent while a file is loaded.
+     * Subclasses should return an index if a single lookup of getContent is expensive, e.g. the one of
+     * ContentController.createPositionIndex.
+     *
+     * @return index of all content positions or null, if the contents are looked up with getContent
+     */
+    protected ContentPositionIndex createContentIndex() {
+        return null;
+    }
+
     /**
      * Removes all connected positions from file
      */
     protected abstract void removeAllPositions();
 
     /**
-     * Add a position to a content (connect)
+     * Removes the connection of a position to its content. Incremental saves need it to update the positions of
+     * changed contents, without it they save the whole file.
+     *
+     * @param mappingPoint position (coordinates)
+     * @return true, if positions can be removed one by one
+     */
+    protected boolean removePosition(MappingPoint mappingPoint) {
+        return false;
+    }
+
+    /**
+     * Add a position to a content (connect). The position is reused for the next segment after the call, so it must
+     * not be stored.
      *
      * @param content      content
      * @param mappingPoint position (coordinates)
@@ -156,4 +1421,18 @@ public abstract class RoomModelPersistence {
      * @return room model map
      */
     protected abstract Map createMap(int rows, int columns, int floors, int floorHeight);
+
+    /**
+     * Creates a room model map which keeps its segments in the given storage. By default a minimal map is created and
+     * its storage is replaced, implementations may override this to avoid the temporary segments.
+     *
+     * @param storage     storage of the segment data
+     * @param floorHeight height of each floor
+     * @return room model map
+     */
+    protected Map createMap(MapStorage storage, int floorHeight) {
+        Map map = createMap(1, 1, 1, floorHeight);
+        map.setStorage(storage);
+        return map;
+    }
 }
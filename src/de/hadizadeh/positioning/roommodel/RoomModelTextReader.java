@@ -0,0 +1,292 @@
+package de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the tab separated lines of a room model file directly from the bytes of the file. The bytes are either read
+ * from a stream into a growing buffer or taken from a buffer which holds the whole file, e.g. a memory mapped file.
+ * Numbers are parsed and material names are resolved without creating strings.
+ */
+public class RoomModelTextReader implements Closeable {
+    /**
+     * Charset of room model text files
+     */
+    public static final Charset CHARSET = Charset.defaultCharset();
+
+    protected InputStream inputStream;
+    protected byte[] streamBuffer;
+    protected ByteBuffer buffer;
+    protected int position;
+    protected int lineEnd;
+    protected int nextLineStart;
+    protected int limit;
+    protected boolean endOfStream;
+
+    /**
+     * Creates a reader of a stream
+     *
+     * @param inputStream stream of the room model file
+     */
+    public RoomModelTextReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+        streamBuffer = new byte[1 << 16];
+        buffer = ByteBuffer.wrap(streamBuffer);
+    }
+
+    /**
+     * Creates a reader of a buffer which holds the whole file from its position to its limit
+     *
+     * @param buffer buffer of the room model file
+     */
+    public RoomModelTextReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        position = buffer.position();
+        nextLineStart = position;
+        limit = buffer.limit();
+        endOfStream = true;
+    }
+
+    /**
+     * Moves to the next line which is not empty
+     *
+     * @return true, if there is a next line
+     * @throws IOException if the file could not be read
+     */
+    public boolean nextLine() throws IOException {
+        while (true) {
+            position = nextLineStart;
+            int end = indexOf('\n', position);
+            while (end < 0 && !endOfStream) {
+                int searched = limit - position;
+                fill();
+                end = indexOf('\n', position + searched);
+            }
+            if (end < 0) {
+                if (position == limit) {
+                    return false;
+                }
+                end = limit;
+                nextLineStart = limit;
+            } else {
+                nextLineStart = end + 1;
+            }
+            lineEnd = end > position && buffer.get(end - 1) == '\r' ? end - 1 : end;
+            if (lineEnd > position) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the rest of the current line
+     *
+     * @return rest of the line
+     */
+    public String restOfLine() {
+        String line = decode(position, lineEnd);
+        position = lineEnd;
+        return line;
+    }
+
+    /**
+     * Delivers the information if the current line has more fields
+     *
+     * @return true, if there is another field
+     */
+    public boolean hasMoreFields() {
+        return position < lineEnd;
+    }
+
+    /**
+     * Parses the next field of the current line as number
+     *
+     * @return number
+     * @throws IOException if the field is no number
+     */
+    public int nextInt() throws IOException {
+        boolean negative = position < lineEnd && buffer.get(position) == '-';
+        if (negative) {
+            position++;
+        }
+        int start = position;
+        int value = 0;
+        while (position < lineEnd) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                if (digit == '\t' - '0') {
+                    break;
+                }
+                throw new IOException("Room model file is corrupted, invalid number in line: " + currentLine());
+            }
+            value = value * 10 + digit;
+            position++;
+        }
+        if (position == start) {
+            throw new IOException("Room model file is corrupted, missing number in line: " + currentLine());
+        }
+        skipSeparator();
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads the next field of the current line as material name
+     *
+     * @param materials available materials
+     * @return material or null, if the field is empty or the material is unknown
+     */
+    public Material nextMaterial(MaterialNameIndex materials) {
+        int start = position;
+        while (position < lineEnd && buffer.get(position) != '\t') {
+            position++;
+        }
+        int length = position - start;
+        skipSeparator();
+        if (length == 0) {
+            return null;
+        }
+        return materials.get(buffer, start, length);
+    }
+
+    /**
+     * Delivers the information if the reader holds the whole file in its buffer
+     *
+     * @return true, if the whole file is in the buffer
+     */
+    public boolean isBuffered() {
+        return inputStream == null;
+    }
+
+    /**
+     * Returns the buffer of the file
+     *
+     * @return buffer
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the position after the current line
+     *
+     * @return position of the next line
+     */
+    public int getNextLineStart() {
+        return nextLineStart;
+    }
+
+    /**
+     * Returns the start of the first line which starts at or after an offset of the buffer
+     *
+     * @param offset offset in the buffer
+     * @return start of the line or the limit of the buffer
+     */
+    public int lineStartAtOrAfter(int offset) {
+        if (offset == 0 || buffer.get(offset - 1) == '\n') {
+            return offset;
+        }
+        int end = indexOf('\n', offset);
+        return end < 0 ? limit : end + 1;
+    }
+
+    /**
+     * Parses a number field of a line without moving the reader
+     *
+     * @param lineStart start of the line
+     * @param field     number of the field
+     * @return number or Integer.MAX_VALUE, if the line has no such number field
+     */
+    public int peekInt(int lineStart, int field) {
+        int index = lineStart;
+        for (int i = 0; i < field; i++) {
+            while (index < limit && buffer.get(index) != '\t' && buffer.get(index) != '\n') {
+                index++;
+            }
+            if (index == limit || buffer.get(index) == '\n') {
+                return Integer.MAX_VALUE;
+            }
+            index++;
+        }
+        boolean negative = index < limit && buffer.get(index) == '-';
+        if (negative) {
+            index++;
+        }
+        int start = index;
+        int value = 0;
+        while (index < limit && buffer.get(index) >= '0' && buffer.get(index) <= '9') {
+            value = value * 10 + buffer.get(index++) - '0';
+        }
+        if (index == start) {
+            return Integer.MAX_VALUE;
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inputStream != null) {
+            inputStream.close();
+        }
+    }
+
+    protected void skipSeparator() {
+        if (position < lineEnd) {
+            position++;
+        }
+    }
+
+    protected String currentLine() {
+        int start = position;
+        while (start > 0 && buffer.get(start - 1) != '\n') {
+            start--;
+        }
+        return decode(start, lineEnd);
+    }
+
+    protected String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Moves the unread bytes to the beginning of the stream buffer and reads more bytes from the stream
+     *
+     * @throws IOException if the file could not be read
+     */
+    protected void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(streamBuffer, position, streamBuffer, 0, limit - position);
+            limit -= position;
+            nextLineStart -= position;
+            position = 0;
+        }
+        if (limit == streamBuffer.length) {
+            streamBuffer = Arrays.copyOf(streamBuffer, streamBuffer.length * 2);
+            buffer = ByteBuffer.wrap(streamBuffer);
+        }
+        int read = inputStream.read(streamBuffer, limit, streamBuffer.length - limit);
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    protected int indexOf(char character, int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == character) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,136 @@
+package de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+
+/**
+ * Writes the tab separated lines of a room model file directly as bytes. Numbers are encoded into a reusable buffer
+ * and the encoded names of materials are cached, so writing a line does not create objects.
+ */
+public class RoomModelTextWriter implements Closeable {
+    protected static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes(RoomModelTextReader.CHARSET);
+
+    protected OutputStream outputStream;
+    protected byte[] buffer;
+    protected int position;
+    protected IdentityHashMap<Material, byte[]> materialNames;
+
+    /**
+     * Creates a writer of a stream
+     *
+     * @param outputStream stream of the room model file
+     */
+    public RoomModelTextWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        buffer = new byte[1 << 16];
+        materialNames = new IdentityHashMap<Material, byte[]>();
+    }
+
+    /**
+     * Writes a text
+     *
+     * @param text text
+     * @throws IOException if the file could not be written
+     */
+    public void write(String text) throws IOException {
+        write(text.getBytes(RoomModelTextReader.CHARSET));
+    }
+
+    /**
+     * Writes a segment line without line separator
+     *
+     * @param column   column number
+     * @param row      row number
+     * @param z        height of the floor
+     * @param material material or null
+     * @throws IOException if the file could not be written
+     */
+    public void writeSegment(int column, int row, int z, Material material) throws IOException {
+        writeInt(column);
+        writeByte('\t');
+        writeInt(row);
+        writeByte('\t');
+        writeInt(z);
+        writeByte('\t');
+        if (material != null) {
+            byte[] name = materialNames.get(material);
+            if (name == null) {
+                name = material.getName().getBytes(RoomModelTextReader.CHARSET);
+                materialNames.put(material, name);
+            }
+            write(name);
+        }
+    }
+
+    /**
+     * Writes the line separator of the platform
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void newLine() throws IOException {
+        write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes a number
+     *
+     * @param value number
+     * @throws IOException if the file could not be written
+     */
+    public void writeInt(int value) throws IOException {
+        if (buffer.length - position < 11) {
+            flushBuffer();
+        }
+        long number = value;
+        if (number < 0) {
+            buffer[position++] = '-';
+            number = -number;
+        }
+        int digits = 1;
+        for (long limit = 10; limit <= number; limit *= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        position += digits;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    protected void writeByte(char character) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) character;
+    }
+
+    protected void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                outputStream.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    protected void flushBuffer() throws IOException {
+        outputStream.write(buffer, 0, position);
+        position = 0;
+    }
+}
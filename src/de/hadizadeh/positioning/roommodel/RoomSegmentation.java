@@ -0,0 +1,419 @@
+package de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.MapStorage;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Splits every floor into rooms. A room is a horizontally or vertically connected region of segments which are no
+ * boundaries (walls, windows and doors by default). The rooms are labeled once with a union find pass and updated
+ * incrementally when the material of a segment changes: new boundaries only flood the room if the room may really be
+ * split, removed boundaries join the smaller rooms into the largest one.
+ */
+public class RoomSegmentation {
+    /**
+     * Names of the default materials which separate rooms
+     */
+    public static final String[] DEFAULT_BOUNDARY_MATERIALS = new String[]{"wall", "window", "door"};
+    protected static final int[] RING_ROWS = new int[]{-1, -1, -1, 0, 1, 1, 1, 0};
+    protected static final int[] RING_COLUMNS = new int[]{-1, 0, 1, 1, 1, 0, -1, -1};
+
+    protected int rows;
+    protected int columns;
+    protected Set<String> boundaryMaterials;
+    protected int[][] labels;
+    protected int[][] roomSizes;
+    protected int[] nextRooms;
+    protected int[] roomCounts;
+    protected int[] stamps;
+    protected int stamp;
+    protected int[] queue;
+
+    /**
+     * Labels the rooms of all floors of a storage with the default boundary materials
+     *
+     * @param storage storage of the map
+     */
+    public RoomSegmentation(MapStorage storage) {
+        this(storage, DEFAULT_BOUNDARY_MATERIALS);
+    }
+
+    /**
+     * Labels the rooms of all floors of a storage
+     *
+     * @param storage           storage of the map
+     * @param boundaryMaterials names of the materials which separate rooms
+     */
+    public RoomSegmentation(MapStorage storage, String... boundaryMaterials) {
+        rows = storage.getRows();
+        columns = storage.getColumns();
+        this.boundaryMaterials = new HashSet<String>(Arrays.asList(boundaryMaterials));
+        labels = new int[storage.getFloors()][];
+        roomSizes = new int[storage.getFloors()][];
+        nextRooms = new int[storage.getFloors()];
+        roomCounts = new int[storage.getFloors()];
+        queue = new int[64];
+        for (int floor = 0; floor < storage.getFloors(); floor++) {
+            label(storage, floor);
+        }
+    }
+
+    /**
+     * Delivers the information if a material separates rooms
+     *
+     * @param material material or null
+     * @return true, if the material is a boundary
+     */
+    public boolean isBoundary(Material material) {
+        return material != null && boundaryMaterials.contains(material.getName());
+    }
+
+    /**
+     * Returns the room of a segment
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     * @return room number or 0, if the segment is a boundary
+     */
+    public int getRoom(int floor, int row, int column) {
+        return labels[floor][row * columns + column];
+    }
+
+    /**
+     * Returns the amount of segments of a room
+     *
+     * @param floor floor number
+     * @param room  room number
+     * @return amount of segments
+     */
+    public int getRoomSize(int floor, int room) {
+        return room > 0 && room < nextRooms[floor] ? roomSizes[floor][room] : 0;
+    }
+
+    /**
+     * Returns the amount of rooms of a floor
+     *
+     * @param floor floor number
+     * @return amount of rooms
+     */
+    public int getRoomCount(int floor) {
+        return roomCounts[floor];
+    }
+
+    /**
+     * Returns all segments of a room
+     *
+     * @param floor floor number
+     * @param room  room number
+     * @return segments (bit number row * columns + column)
+     */
+    public BitSet getRoomSegments(int floor, int room) {
+        BitSet segments = new BitSet(rows * columns);
+        int[] floorLabels = labels[floor];
+        for (int index = 0; index < floorLabels.length; index++) {
+            if (floorLabels[index] == room) {
+                segments.set(index);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Updates the rooms after the material of a segment has changed
+     *
+     * @param floor       floor number
+     * @param row         row number
+     * @param column      column number
+     * @param oldMaterial previous material or null
+     * @param newMaterial new material or null
+     */
+    public void update(int floor, int row, int column, Material oldMaterial, Material newMaterial) {
+        boolean wasBoundary = labels[floor][row * columns + column] == 0;
+        boolean isBoundary = isBoundary(newMaterial);
+        if (wasBoundary && !isBoundary) {
+            open(floor, row, column);
+        } else if (!wasBoundary && isBoundary) {
+            close(floor, row, column);
+        }
+    }
+
+    /**
+     * Labels a floor with two passes: the first pass labels every segment like its left or upper neighbor and joins
+     * the labels of both neighbors, the second pass replaces all labels by consecutive room numbers
+     *
+     * @param storage storage of the map
+     * @param floor   floor number
+     */
+    protected void label(MapStorage storage, int floor) {
+        int[] floorLabels = new int[rows * columns];
+        int[] parents = new int[64];
+        int nextLabel = 1;
+        Material lastMaterial = null;
+        boolean lastBoundary = false;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                Material material = storage.getMaterial(floor, row, column);
+                if (material != lastMaterial) {
+                    lastMaterial = material;
+                    lastBoundary = isBoundary(material);
+                }
+                if (lastBoundary) {
+                    continue;
+                }
+                int index = row * columns + column;
+                int upper = row > 0 ? floorLabels[index - columns] : 0;
+                int left = column > 0 ? floorLabels[index - 1] : 0;
+                if (upper == 0 && left == 0) {
+                    if (nextLabel == parents.length) {
+                        parents = Arrays.copyOf(parents, nextLabel * 2);
+                    }
+                    parents[nextLabel] = nextLabel;
+                    floorLabels[index] = nextLabel++;
+                } else if (upper == 0 || left == 0) {
+                    floorLabels[index] = upper + left;
+                } else {
+                    int upperRoot = find(parents, upper);
+                    int leftRoot = find(parents, left);
+                    parents[Math.max(upperRoot, leftRoot)] = Math.min(upperRoot, leftRoot);
+                    floorLabels[index] = left;
+                }
+            }
+        }
+        int[] rooms = new int[nextLabel];
+        int[] sizes = new int[Math.max(nextLabel, 16)];
+        int nextRoom = 1;
+        for (int label = 1; label < nextLabel; label++) {
+            int root = find(parents, label);
+            if (rooms[root] == 0) {
+                rooms[root] = nextRoom++;
+            }
+            rooms[label] = rooms[root];
+        }
+        for (int index = 0; index < floorLabels.length; index++) {
+            if (floorLabels[index] != 0) {
+                floorLabels[index] = rooms[floorLabels[index]];
+                sizes[floorLabels[index]]++;
+            }
+        }
+        labels[floor] = floorLabels;
+        roomSizes[floor] = sizes;
+        nextRooms[floor] = nextRoom;
+        roomCounts[floor] = nextRoom - 1;
+    }
+
+    /**
+     * Adds a segment which is no boundary any longer to the rooms of its neighbors. If it connects several rooms, the
+     * smaller rooms are relabeled as the largest one.
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     */
+    protected void open(int floor, int row, int column) {
+        int[] floorLabels = labels[floor];
+        int index = row * columns + column;
+        int largestRoom = 0;
+        for (int neighbor = 1; neighbor < 8; neighbor += 2) {
+            int room = neighborLabel(floorLabels, row + RING_ROWS[neighbor], column + RING_COLUMNS[neighbor]);
+            if (room != 0 && (largestRoom == 0 || roomSizes[floor][room] > roomSizes[floor][largestRoom])) {
+                largestRoom = room;
+            }
+        }
+        if (largestRoom == 0) {
+            largestRoom = newRoom(floor);
+        }
+        floorLabels[index] = largestRoom;
+        roomSizes[floor][largestRoom]++;
+        for (int neighbor = 1; neighbor < 8; neighbor += 2) {
+            int neighborRow = row + RING_ROWS[neighbor];
+            int neighborColumn = column + RING_COLUMNS[neighbor];
+            int room = neighborLabel(floorLabels, neighborRow, neighborColumn);
+            if (room != 0 && room != largestRoom) {
+                int relabeled = flood(floor, neighborRow * columns + neighborColumn, room, largestRoom);
+                roomSizes[floor][room] -= relabeled;
+                roomSizes[floor][largestRoom] += relabeled;
+                roomCounts[floor]--;
+            }
+        }
+    }
+
+    /**
+     * Removes a segment which has become a boundary from its room. The room is only flooded if the segment
+     * separates its neighbors along the surrounding ring of segments. Every part which is no longer connected to the
+     * first neighbor gets a new room number.
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     */
+    protected void close(int floor, int row, int column) {
+        int[] floorLabels = labels[floor];
+        int index = row * columns + column;
+        int room = floorLabels[index];
+        floorLabels[index] = 0;
+        roomSizes[floor][room]--;
+        if (roomSizes[floor][room] == 0) {
+            roomCounts[floor]--;
+            return;
+        }
+        if (!mayBeSplit(floorLabels, row, column)) {
+            return;
+        }
+        nextStamp(floorLabels.length);
+        int firstNeighbor = -1;
+        for (int neighbor = 1; neighbor < 8; neighbor += 2) {
+            int neighborRow = row + RING_ROWS[neighbor];
+            int neighborColumn = column + RING_COLUMNS[neighbor];
+            if (neighborLabel(floorLabels, neighborRow, neighborColumn) != room) {
+                continue;
+            }
+            int neighborIndex = neighborRow * columns + neighborColumn;
+            if (firstNeighbor < 0) {
+                firstNeighbor = neighborIndex;
+                flood(floor, neighborIndex, room, room);
+            } else if (stamps[neighborIndex] != stamp) {
+                int splitRoom = newRoom(floor);
+                int relabeled = flood(floor, neighborIndex, room, splitRoom);
+                roomSizes[floor][room] -= relabeled;
+                roomSizes[floor][splitRoom] += relabeled;
+            }
+        }
+    }
+
+    /**
+     * Checks if the open horizontal and vertical neighbors of a segment are connected through the eight surrounding
+     * segments. If they are, removing the segment can not split its room.
+     *
+     * @param floorLabels labels of the floor
+     * @param row         row number
+     * @param column      column number
+     * @return true, if the room may be split
+     */
+    protected boolean mayBeSplit(int[] floorLabels, int row, int column) {
+        int openPositions = 0;
+        for (int position = 0; position < 8; position++) {
+            if (neighborLabel(floorLabels, row + RING_ROWS[position], column + RING_COLUMNS[position]) != 0) {
+                openPositions |= 1 << position;
+            }
+        }
+        if (openPositions == 0xFF) {
+            return false;
+        }
+        int start = Integer.numberOfTrailingZeros(~openPositions);
+        int arcsWithNeighbors = 0;
+        boolean arcHasNeighbor = false;
+        for (int step = 1; step <= 8; step++) {
+            int position = (start + step) & 7;
+            if ((openPositions & (1 << position)) != 0) {
+                arcHasNeighbor |= (position & 1) == 1;
+            } else {
+                if (arcHasNeighbor) {
+                    arcsWithNeighbors++;
+                }
+                arcHasNeighbor = false;
+            }
+        }
+        return arcsWithNeighbors > 1;
+    }
+
+    /**
+     * Relabels all connected segments of a room, starting at a segment, and stamps them as visited
+     *
+     * @param floor     floor number
+     * @param start     index of the start segment
+     * @param room      room number of the connected segments
+     * @param newRoom   new room number
+     * @return amount of relabeled segments
+     */
+    protected int flood(int floor, int start, int room, int newRoom) {
+        int[] floorLabels = labels[floor];
+        if (room == newRoom) {
+            nextStampIfNeeded(floorLabels.length);
+        }
+        int head = 0;
+        int tail = 0;
+        int count = 0;
+        queue[tail++] = start;
+        markVisited(floorLabels, start, newRoom, room);
+        while (head < tail) {
+            int index = queue[head++];
+            count++;
+            int row = index / columns;
+            int column = index % columns;
+            for (int neighbor = 1; neighbor < 8; neighbor += 2) {
+                int neighborRow = row + RING_ROWS[neighbor];
+                int neighborColumn = column + RING_COLUMNS[neighbor];
+                if (neighborRow < 0 || neighborRow >= rows || neighborColumn < 0 || neighborColumn >= columns) {
+                    continue;
+                }
+                int neighborIndex = neighborRow * columns + neighborColumn;
+                if (floorLabels[neighborIndex] == room && (room != newRoom || stamps[neighborIndex] != stamp)) {
+                    if (tail == queue.length) {
+                        if (head > 0) {
+                            System.arraycopy(queue, head, queue, 0, tail - head);
+                            tail -= head;
+                            head = 0;
+                        }
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, queue.length * 2);
+                        }
+                    }
+                    queue[tail++] = neighborIndex;
+                    markVisited(floorLabels, neighborIndex, newRoom, room);
+                }
+            }
+        }
+        return count;
+    }
+
+    protected void markVisited(int[] floorLabels, int index, int newRoom, int room) {
+        if (room == newRoom) {
+            stamps[index] = stamp;
+        } else {
+            floorLabels[index] = newRoom;
+        }
+    }
+
+    protected void nextStamp(int size) {
+        if (stamps == null || stamps.length < size) {
+            stamps = new int[size];
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    protected void nextStampIfNeeded(int size) {
+        if (stamps == null || stamps.length < size) {
+            nextStamp(size);
+        }
+    }
+
+    protected int newRoom(int floor) {
+        int room = nextRooms[floor]++;
+        if (room == roomSizes[floor].length) {
+            roomSizes[floor] = Arrays.copyOf(roomSizes[floor], room * 2);
+        }
+        roomCounts[floor]++;
+        return room;
+    }
+
+    protected int neighborLabel(int[] floorLabels, int row, int column) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns) {
+            return 0;
+        }
+        return floorLabels[row * columns + column];
+    }
+
+    protected static int find(int[] parents, int label) {
+        while (parents[label] != label) {
+            parents[label] = parents[parents[label]];
+            label = parents[label];
+        }
+        return label;
+    }
+}
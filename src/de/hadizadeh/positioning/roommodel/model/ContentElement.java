@@ -9,6 +9,19 @@ import java.util.List;
  * Manages a single content (not a content group)
  */
 public class ContentElement {
+    /**
+     * Delivers the texts of lazily loaded contents
+     */
+    public static interface TextSource {
+        /**
+         * Returns the text of a file
+         *
+         * @param file text file
+         * @return text
+         */
+        String getText(String file);
+    }
+
     protected int contentNumber;
     protected String title;
     protected String description;
@@ -21,6 +34,15 @@ public class ContentElement {
     protected File videoFile;
     protected List<String> positions;
     protected String url;
+    protected TextSource textSource;
+    protected String titleFile;
+    protected String descriptionFile;
+    protected String fullTextFile;
+    protected String urlFile;
+    protected boolean titleChanged;
+    protected boolean descriptionChanged;
+    protected boolean fullTextChanged;
+    protected boolean urlChanged;
 
     /**
      * Creates a content element
@@ -60,6 +82,15 @@ public class ContentElement {
         this.videoFile = copy.videoFile;
         this.positions = copy.positions;
         this.url = copy.url;
+        this.textSource = copy.textSource;
+        this.titleFile = copy.titleFile;
+        this.descriptionFile = copy.descriptionFile;
+        this.fullTextFile = copy.fullTextFile;
+        this.urlFile = copy.urlFile;
+        this.titleChanged = copy.titleChanged;
+        this.descriptionChanged = copy.descriptionChanged;
+        this.fullTextChanged = copy.fullTextChanged;
+        this.urlChanged = copy.urlChanged;
     }
 
     /**
@@ -86,6 +117,9 @@ public class ContentElement {
      * @return title
      */
     public String getTitle() {
+        if (titleFile != null) {
+            return textSource.getText(titleFile);
+        }
         return title;
     }
 
@@ -96,6 +130,36 @@ public class ContentElement {
      */
     public void setTitle(String title) {
         this.title = title;
+        this.titleFile = null;
+        this.titleChanged = true;
+    }
+
+    /**
+     * Delivers the information if the content has a title, without loading it
+     *
+     * @return true, if the title is set
+     */
+    public boolean hasTitle() {
+        return title != null || titleFile != null;
+    }
+
+    /**
+     * Delivers the information if the title has been changed since the content has been loaded or saved
+     *
+     * @return true, if the title has been changed
+     */
+    public boolean isTitleChanged() {
+        return titleChanged;
+    }
+
+    /**
+     * Sets the file of the title, which is loaded from the text source when the title is requested
+     *
+     * @param titleFile title file
+     */
+    public void setTitleFile(String titleFile) {
+        this.title = null;
+        this.titleFile = titleFile;
     }
 
     /**
@@ -104,6 +168,9 @@ public class ContentElement {
      * @return description
      */
     public String getDescription() {
+        if (descriptionFile != null) {
+            return textSource.getText(descriptionFile);
+        }
         return description;
     }
 
@@ -114,6 +181,36 @@ public class ContentElement {
      */
     public void setDescription(String description) {
         this.description = description;
+        this.descriptionFile = null;
+        this.descriptionChanged = true;
+    }
+
+    /**
+     * Delivers the information if the content has a description, without loading it
+     *
+     * @return true, if the description is set
+     */
+    public boolean hasDescription() {
+        return description != null || descriptionFile != null;
+    }
+
+    /**
+     * Delivers the information if the description has been changed since the content has been loaded or saved
+     *
+     * @return true, if the description has been changed
+     */
+    public boolean isDescriptionChanged() {
+        return descriptionChanged;
+    }
+
+    /**
+     * Sets the file of the description, which is loaded from the text source when the description is requested
+     *
+     * @param descriptionFile description file
+     */
+    public void setDescriptionFile(String descriptionFile) {
+        this.description = null;
+        this.descriptionFile = descriptionFile;
     }
 
     /**
@@ -122,6 +219,9 @@ public class ContentElement {
      * @return long description text
      */
     public String getFullText() {
+        if (fullTextFile != null) {
+            return textSource.getText(fullTextFile);
+        }
         return fullText;
     }
 
@@ -132,6 +232,37 @@ public class ContentElement {
      */
     public void setFullText(String fullText) {
         this.fullText = fullText;
+        this.fullTextFile = null;
+        this.fullTextChanged = true;
+    }
+
+    /**
+     * Delivers the information if the content has a long description text, without loading it
+     *
+     * @return true, if the long description text is set
+     */
+    public boolean hasFullText() {
+        return fullText != null || fullTextFile != null;
+    }
+
+    /**
+     * Delivers the information if the long description text has been changed since the content has been loaded or
+     * saved
+     *
+     * @return true, if the long description text has been changed
+     */
+    public boolean isFullTextChanged() {
+        return fullTextChanged;
+    }
+
+    /**
+     * Sets the file of the long description text, which is loaded from the text source when the text is requested
+     *
+     * @param fullTextFile long description text file
+     */
+    public void setFullTextFile(String fullTextFile) {
+        this.fullText = null;
+        this.fullTextFile = fullTextFile;
     }
 
     /**
@@ -266,6 +397,9 @@ public class ContentElement {
      * @return url
      */
     public String getUrl() {
+        if (urlFile != null) {
+            return textSource.getText(urlFile);
+        }
         return url;
     }
 
@@ -276,5 +410,72 @@ public class ContentElement {
      */
     public void setUrl(String url) {
         this.url = url;
+        this.urlFile = null;
+        this.urlChanged = true;
+    }
+
+    /**
+     * Delivers the information if the content has an url, without loading it
+     *
+     * @return true, if the url is set
+     */
+    public boolean hasUrl() {
+        return url != null || urlFile != null;
+    }
+
+    /**
+     * Delivers the information if the url has been changed since the content has been loaded or saved
+     *
+     * @return true, if the url has been changed
+     */
+    public boolean isUrlChanged() {
+        return urlChanged;
+    }
+
+    /**
+     * Resets the information which texts and media files have been changed, after the content has been loaded or saved
+     */
+    public void clearChanges() {
+        titleChanged = false;
+        descriptionChanged = false;
+        fullTextChanged = false;
+        urlChanged = false;
+        imageUpdated = false;
+        audioUpdated = false;
+        videoUpdated = false;
+    }
+
+    /**
+     * Adds the changes of another version of this content, e.g. of a copy whose save has been replaced or has failed
+     *
+     * @param other other version of the content
+     */
+    public void mergeChanges(ContentElement other) {
+        titleChanged |= other.titleChanged;
+        descriptionChanged |= other.descriptionChanged;
+        fullTextChanged |= other.fullTextChanged;
+        urlChanged |= other.urlChanged;
+        imageUpdated |= other.imageUpdated;
+        audioUpdated |= other.audioUpdated;
+        videoUpdated |= other.videoUpdated;
+    }
+
+    /**
+     * Sets the file of the url, which is loaded from the text source when the url is requested
+     *
+     * @param urlFile url file
+     */
+    public void setUrlFile(String urlFile) {
+        this.url = null;
+        this.urlFile = urlFile;
+    }
+
+    /**
+     * Sets the source of the texts which are set as files
+     *
+     * @param textSource text source
+     */
+    public void setTextSource(TextSource textSource) {
+        this.textSource = textSource;
     }
 }
@@ -0,0 +1,181 @@
+package de.hadizadeh.positioning.roommodel.storage;
+
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.MapSegment;
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Loads the floors of a map file on demand into a packed storage. A floor is loaded when one of its segments is
+ * accessed for the first time. Changes of the size or the floors of the map load all floors first.
+ */
+public class LazyMapStorage extends MapStorage {
+    /**
+     * Loads the segments of a single floor
+     */
+    public static interface FloorLoader {
+        /**
+         * Writes the segments of a floor into a storage
+         *
+         * @param floor   floor number
+         * @param storage storage of the map
+         * @throws IOException if the floor could not be loaded
+         */
+        void loadFloor(int floor, MapStorage storage) throws IOException;
+    }
+
+    protected PackedMapStorage target;
+    protected FloorLoader loader;
+    protected AtomicIntegerArray loadedFloors;
+    protected volatile boolean allLoaded;
+
+    /**
+     * Creates a storage whose floors are loaded on demand
+     *
+     * @param rows    amount of rows
+     * @param columns amount of columns
+     * @param floors  amount of floors
+     * @param loader  loader of the floors
+     */
+    public LazyMapStorage(int rows, int columns, int floors, FloorLoader loader) {
+        super(rows, columns, floors);
+        this.loader = loader;
+        target = new PackedMapStorage(rows, columns, floors);
+        loadedFloors = new AtomicIntegerArray(floors);
+    }
+
+    /**
+     * Delivers the information if a floor has been loaded
+     *
+     * @param floor floor number
+     * @return true, if the floor has been loaded
+     */
+    public boolean isFloorLoaded(int floor) {
+        return allLoaded || loadedFloors.get(floor) != 0;
+    }
+
+    /**
+     * Loads a floor, if it has not been loaded yet
+     *
+     * @param floor floor number
+     * @throws IllegalStateException if the floor could not be loaded
+     */
+    public void loadFloor(int floor) {
+        if (!isFloorLoaded(floor)) {
+            synchronized (this) {
+                if (loadedFloors.get(floor) == 0) {
+                    try {
+                        loader.loadFloor(floor, target);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Floor " + floor + " of the room model could not be loaded", e);
+                    }
+                    loadedFloors.set(floor, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads all floors which have not been loaded yet
+     *
+     * @throws IllegalStateException if a floor could not be loaded
+     */
+    public void loadAllFloors() {
+        if (!allLoaded) {
+            for (int floor = 0; floor < floors; floor++) {
+                loadFloor(floor);
+            }
+            allLoaded = true;
+        }
+    }
+
+    @Override
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        super.setForkJoinPool(forkJoinPool);
+        target.setForkJoinPool(forkJoinPool);
+    }
+
+    @Override
+    public int getRowBandStart(int row) {
+        return target.getRowBandStart(row);
+    }
+
+    @Override
+    public void registerMaterials(List<Material> materials) {
+        target.registerMaterials(materials);
+    }
+
+    @Override
+    public Material getMaterial(int floor, int row, int column) {
+        loadFloor(floor);
+        return target.getMaterial(floor, row, column);
+    }
+
+    @Override
+    public void setMaterial(int floor, int row, int column, Material material) {
+        loadFloor(floor);
+        target.setMaterial(floor, row, column, material);
+    }
+
+    @Override
+    public ContentElement getContent(int floor, int row, int column) {
+        loadFloor(floor);
+        return target.getContent(floor, row, column);
+    }
+
+    @Override
+    public void setContent(int floor, int row, int column, ContentElement content) {
+        loadFloor(floor);
+        target.setContent(floor, row, column, content);
+    }
+
+    @Override
+    public void fillMaterial(int floor, int row, int startColumn, int endColumn, Material material) {
+        loadFloor(floor);
+        target.fillMaterial(floor, row, startColumn, endColumn, material);
+    }
+
+    @Override
+    public void fillContent(int floor, int row, int startColumn, int endColumn, ContentElement content) {
+        loadFloor(floor);
+        target.fillContent(floor, row, startColumn, endColumn, content);
+    }
+
+    @Override
+    public MapSegment getMapSegment(int floor, int row, int column, MapSegment flyweight) {
+        loadFloor(floor);
+        return target.getMapSegment(floor, row, column, flyweight);
+    }
+
+    @Override
+    public MapStorage snapshot() {
+        loadAllFloors();
+        return target.snapshot();
+    }
+
+    @Override
+    public void addFloor(int copyFloorNumber) {
+        loadAllFloors();
+        target.addFloor(copyFloorNumber);
+        floors = target.getFloors();
+    }
+
+    @Override
+    public void removeFloor(int floorNumber) {
+        loadAllFloors();
+        target.removeFloor(floorNumber);
+        floors = target.getFloors();
+    }
+
+    @Override
+    public void changeSize(boolean add, int amount, int position) {
+        loadAllFloors();
+        target.changeSize(add, amount, position);
+        rows = target.getRows();
+        columns = target.getColumns();
+    }
+}
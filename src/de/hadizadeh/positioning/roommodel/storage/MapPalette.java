@@ -0,0 +1,144 @@
+package de.hadizadeh.positioning.roommodel.storage;
+
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns small numeric ids to materials and contents, so segments can be stored in primitive arrays. The id 0 always
+ * stands for "no material" or "no content".
+ */
+public class MapPalette {
+    /**
+     * Maximum amount of different materials (ids are stored as short values)
+     */
+    public static final int MAX_MATERIALS = Short.MAX_VALUE;
+
+    protected volatile Material[] materials;
+    protected volatile ContentElement[] contents;
+    protected int materialCount;
+    protected int contentCount;
+    protected java.util.Map<Material, Short> materialIds;
+    protected java.util.Map<ContentElement, Integer> contentIds;
+
+    /**
+     * Creates an empty palette
+     */
+    public MapPalette() {
+        materials = new Material[16];
+        contents = new ContentElement[16];
+        materialCount = 1;
+        contentCount = 1;
+        materialIds = new ConcurrentHashMap<Material, Short>();
+        contentIds = new ConcurrentHashMap<ContentElement, Integer>();
+    }
+
+    /**
+     * Returns the id of a material and registers the material, if it is unknown
+     *
+     * @param material material or null
+     * @return material id, 0 for null
+     */
+    public short getMaterialId(Material material) {
+        if (material == null) {
+            return 0;
+        }
+        Short id = materialIds.get(material);
+        if (id != null) {
+            return id;
+        }
+        return registerMaterial(material);
+    }
+
+    /**
+     * Returns the material of an id
+     *
+     * @param id material id
+     * @return material or null for the id 0
+     */
+    public Material getMaterial(int id) {
+        return materials[id];
+    }
+
+    /**
+     * Returns the amount of registered material ids including the empty id 0
+     *
+     * @return amount of material ids
+     */
+    public int getMaterialCount() {
+        return materialCount;
+    }
+
+    /**
+     * Returns the id of a content and registers the content, if it is unknown
+     *
+     * @param content content or null
+     * @return content id, 0 for null
+     */
+    public int getContentId(ContentElement content) {
+        if (content == null) {
+            return 0;
+        }
+        Integer id = contentIds.get(content);
+        if (id != null) {
+            return id;
+        }
+        return registerContent(content);
+    }
+
+    /**
+     * Returns the content of an id
+     *
+     * @param id content id
+     * @return content or null for the id 0
+     */
+    public ContentElement getContent(int id) {
+        return contents[id];
+    }
+
+    /**
+     * Returns the amount of registered content ids including the empty id 0
+     *
+     * @return amount of content ids
+     */
+    public int getContentCount() {
+        return contentCount;
+    }
+
+    protected synchronized short registerMaterial(Material material) {
+        Short id = materialIds.get(material);
+        if (id != null) {
+            return id;
+        }
+        if (materialCount >= MAX_MATERIALS) {
+            throw new IllegalStateException("Too many different materials: " + materialCount);
+        }
+        Material[] changedMaterials = materials;
+        if (materialCount == changedMaterials.length) {
+            changedMaterials = Arrays.copyOf(changedMaterials, changedMaterials.length * 2);
+        }
+        changedMaterials[materialCount] = material;
+        materials = changedMaterials;
+        id = (short) materialCount++;
+        materialIds.put(material, id);
+        return id;
+    }
+
+    protected synchronized int registerContent(ContentElement content) {
+        Integer id = contentIds.get(content);
+        if (id != null) {
+            return id;
+        }
+        ContentElement[] changedContents = contents;
+        if (contentCount == changedContents.length) {
+            changedContents = Arrays.copyOf(changedContents, changedContents.length * 2);
+        }
+        changedContents[contentCount] = content;
+        contents = changedContents;
+        id = contentCount++;
+        contentIds.put(content, id);
+        return id;
+    }
+}
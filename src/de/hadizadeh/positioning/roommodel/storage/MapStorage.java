@@ -0,0 +1,224 @@
+package de.hadizadeh.positioning.roommodel.storage;
+
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.MapSegment;
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Stores the segment data (materials and contents) of all floors of a room model map
+ */
+public abstract class MapStorage {
+    protected int rows;
+    protected int columns;
+    protected int floors;
+    protected ForkJoinPool forkJoinPool;
+
+    /**
+     * Creates a storage of a defined size
+     *
+     * @param rows    amount of rows
+     * @param columns amount of columns
+     * @param floors  amount of floors
+     */
+    public MapStorage(int rows, int columns, int floors) {
+        this.rows = rows;
+        this.columns = columns;
+        this.floors = floors;
+    }
+
+    /**
+     * Returns the amount of rows
+     *
+     * @return amount of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the amount of columns
+     *
+     * @return amount of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the amount of floors
+     *
+     * @return amount of floors
+     */
+    public int getFloors() {
+        return floors;
+    }
+
+    /**
+     * Sets the pool for parallel bulk operations. Without a pool, all operations run in the calling thread.
+     *
+     * @param forkJoinPool pool or null
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Returns the first row of the band which contains the given row. Parallel tasks are split at band starts, so
+     * concurrent writes of different tasks never touch the same internal block of the storage.
+     *
+     * @param row row number
+     * @return first row of the band
+     */
+    public int getRowBandStart(int row) {
+        return row;
+    }
+
+    /**
+     * Prepares the storage for writing the given materials, e.g. by assigning their ids, so parallel writers do not
+     * have to register them
+     *
+     * @param materials materials
+     */
+    public void registerMaterials(List<Material> materials) {
+    }
+
+    /**
+     * Returns the material of a segment
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     * @return material or null, if the segment has no material
+     */
+    public abstract Material getMaterial(int floor, int row, int column);
+
+    /**
+     * Sets the material of a segment
+     *
+     * @param floor    floor number
+     * @param row      row number
+     * @param column   column number
+     * @param material material or null to remove the material
+     */
+    public abstract void setMaterial(int floor, int row, int column, Material material);
+
+    /**
+     * Returns the connected content of a segment
+     *
+     * @param floor  floor number
+     * @param row    row number
+     * @param column column number
+     * @return content or null, if the segment has no content
+     */
+    public abstract ContentElement getContent(int floor, int row, int column);
+
+    /**
+     * Sets the connected content of a segment
+     *
+     * @param floor   floor number
+     * @param row     row number
+     * @param column  column number
+     * @param content content or null to remove the content
+     */
+    public abstract void setContent(int floor, int row, int column, ContentElement content);
+
+    /**
+     * Sets the material of a span of segments of a row
+     *
+     * @param floor       floor number
+     * @param row         row number
+     * @param startColumn first column
+     * @param endColumn   last column (inclusive)
+     * @param material    material or null to remove the material
+     */
+    public void fillMaterial(int floor, int row, int startColumn, int endColumn, Material material) {
+        for (int column = startColumn; column <= endColumn; column++) {
+            setMaterial(floor, row, column, material);
+        }
+    }
+
+    /**
+     * Sets the connected content of a span of segments of a row
+     *
+     * @param floor       floor number
+     * @param row         row number
+     * @param startColumn first column
+     * @param endColumn   last column (inclusive)
+     * @param content     content or null to remove the content
+     */
+    public void fillContent(int floor, int row, int startColumn, int endColumn, ContentElement content) {
+        for (int column = startColumn; column <= endColumn; column++) {
+            setContent(floor, row, column, content);
+        }
+    }
+
+    /**
+     * Returns the map segment of a position. Storages which do not hold segment objects load the data of the position
+     * into the given flyweight segment and return it, so the result is only valid until the next call.
+     *
+     * @param floor     floor number
+     * @param row       row number
+     * @param column    column number
+     * @param flyweight reusable segment for storages without segment objects
+     * @return map segment of the position
+     */
+    public abstract MapSegment getMapSegment(int floor, int row, int column, MapSegment flyweight);
+
+    /**
+     * Creates a read-only copy of the current state which can be read by another thread while this storage is still
+     * changed, e.g. for saving in the background. By default all segments are copied into a packed storage, which
+     * takes time and memory in proportion to the size of the map (in parallel, if a fork join pool is set). Storages
+     * which can share their data with the snapshot override this.
+     *
+     * @return snapshot of the storage
+     */
+    public MapStorage snapshot() {
+        final PackedMapStorage snapshot = new PackedMapStorage(rows, columns, floors);
+        RowBandTask.execute(forkJoinPool, snapshot, 0, floors, rows, columns, new RowBandTask.Work() {
+            @Override
+            public void process(int floor, int startRow, int endRow) {
+                for (int row = startRow; row < endRow; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        snapshot.setMaterial(floor, row, column, getMaterial(floor, row, column));
+                        snapshot.setContent(floor, row, column, getContent(floor, row, column));
+                    }
+                }
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Releases a snapshot which is not used any longer, so the original storage does not have to copy shared data
+     * before writing to it
+     */
+    public void release() {
+    }
+
+    /**
+     * Appends a new floor
+     *
+     * @param copyFloorNumber floor which should be copied or -1 for an empty floor
+     */
+    public abstract void addFloor(int copyFloorNumber);
+
+    /**
+     * Removes a floor
+     *
+     * @param floorNumber floor number
+     */
+    public abstract void removeFloor(int floorNumber);
+
+    /**
+     * Adds or removes rows or columns at one side of all floors. The caller has to ensure that the resulting size is
+     * valid.
+     *
+     * @param add      true for adding segments, false for removing them
+     * @param amount   amount of rows or columns
+     * @param position side of the map (ordinal of the map position)
+     */
+    public abstract void changeSize(boolean add, int amount, int position);
+}
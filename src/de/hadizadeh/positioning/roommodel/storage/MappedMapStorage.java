@@ -0,0 +1,442 @@
+package de.hadizadeh.positioning.roommodel.storage;
+
+import de.hadizadeh.positioning.roommodel.Map;
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.MapSegment;
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Keeps the segment data in a memory mapped file instead of the java heap. Pages of the file are only loaded when they
+ * are accessed, so large models can be opened instantly. The file is also a save format of the grid: after flush() it
+ * contains the size, the material names and the content numbers of all segments.
+ * <p>
+ * Contents are identified by their content number, which has to be positive. A content replaces a previously set
+ * content with the same number, so getContent returns the content which has been set or registered last.
+ * <p>
+ * File layout: a header of HEADER_SIZE bytes, one block per floor with the material ids (short) followed by the
+ * content numbers (int) of all segments and the material dictionary behind the last floor. Structural changes (floors
+ * and size) move the data inside of the file, they are much slower than on heap storages. A size change writes the
+ * complete file to a temporary file, which replaces the file atomically. Platforms which do not allow to replace a
+ * mapped file (e.g. Windows) can not change the size.
+ */
+public class MappedMapStorage extends MapStorage {
+    /**
+     * Identifier at the beginning of every mapped map file
+     */
+    public static final int MAGIC = 0x49504D4D;
+    /**
+     * Version of the file layout
+     */
+    public static final int VERSION = 1;
+    /**
+     * Size of the file header in bytes
+     */
+    public static final int HEADER_SIZE = 64;
+
+    protected File file;
+    protected RandomAccessFile randomAccessFile;
+    protected FileChannel channel;
+    protected MappedByteBuffer[] floorBuffers;
+    protected MapPalette palette;
+    protected ContentElement[] contentsByNumber;
+    protected int floorHeight;
+    protected int dictionarySize;
+
+    protected MappedMapStorage(File file, int rows, int columns, int floors, int floorHeight) throws IOException {
+        super(rows, columns, floors);
+        this.file = file;
+        this.floorHeight = floorHeight;
+        this.palette = new MapPalette();
+        this.contentsByNumber = new ContentElement[16];
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * Creates a new mapped file with empty segments. An existing file will be overwritten.
+     *
+     * @param file    file for the segment data
+     * @param rows    amount of rows
+     * @param columns amount of columns
+     * @param floors  amount of floors
+     * @return storage
+     * @throws IOException if the file could not be created
+     */
+    public static MappedMapStorage create(File file, int rows, int columns, int floors) throws IOException {
+        MappedMapStorage storage = new MappedMapStorage(file, rows, columns, floors, 1);
+        storage.randomAccessFile.setLength(0);
+        storage.floorBuffers = new MappedByteBuffer[floors];
+        for (int floor = 0; floor < floors; floor++) {
+            storage.floorBuffers[floor] = storage.mapFloor(floor);
+            clear(storage.floorBuffers[floor].duplicate());
+        }
+        storage.flush();
+        return storage;
+    }
+
+    /**
+     * Opens an existing mapped file. Only the header and the dictionary are read, segments are loaded on demand.
+     *
+     * @param file      mapped map file
+     * @param materials available materials, unknown material names are loaded as plain materials
+     * @param contents  available contents, they are assigned by their content number
+     * @return storage
+     * @throws IOException              if the file could not be read or is not a mapped map file
+     * @throws IllegalArgumentException if a content number is not positive
+     */
+    public static MappedMapStorage open(File file, List<Material> materials, List<ContentElement> contents) throws IOException {
+        DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        int magic;
+        int version;
+        int rows;
+        int columns;
+        int floors;
+        int floorHeight;
+        int dictionarySize;
+        try {
+            magic = header.readInt();
+            version = header.readInt();
+            rows = header.readInt();
+            columns = header.readInt();
+            floors = header.readInt();
+            floorHeight = header.readInt();
+            dictionarySize = header.readInt();
+        } finally {
+            header.close();
+        }
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException("No mapped map file: " + file);
+        }
+        MappedMapStorage storage = new MappedMapStorage(file, rows, columns, floors, floorHeight);
+        boolean opened = false;
+        try {
+            storage.floorBuffers = new MappedByteBuffer[floors];
+            for (int floor = 0; floor < floors; floor++) {
+                storage.floorBuffers[floor] = storage.mapFloor(floor);
+            }
+            java.util.Map<String, Material> materialNames = new HashMap<String, Material>();
+            if (materials != null) {
+                for (Material material : materials) {
+                    materialNames.put(material.getName(), material);
+                }
+            }
+            ByteBuffer dictionaryBytes = ByteBuffer.allocate(dictionarySize);
+            while (dictionaryBytes.hasRemaining()) {
+                if (storage.channel.read(dictionaryBytes, storage.dictionaryOffset() + dictionaryBytes.position()) < 0) {
+                    throw new EOFException("Dictionary of " + file + " is truncated");
+                }
+            }
+            DataInputStream dictionary = new DataInputStream(new ByteArrayInputStream(dictionaryBytes.array()));
+            int materialCount = dictionary.readInt();
+            for (int i = 0; i < materialCount; i++) {
+                String name = dictionary.readUTF();
+                Material material = materialNames.get(name);
+                if (material == null) {
+                    material = new Material(name);
+                }
+                storage.palette.getMaterialId(material);
+            }
+            if (contents != null) {
+                for (ContentElement content : contents) {
+                    storage.registerContent(content);
+                }
+            }
+            opened = true;
+            return storage;
+        } finally {
+            if (!opened) {
+                storage.randomAccessFile.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the mapped file
+     *
+     * @return file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the floor height which is stored in the file
+     *
+     * @return height of each floor
+     */
+    public int getFloorHeight() {
+        return floorHeight;
+    }
+
+    /**
+     * Sets the floor height which is stored in the file
+     *
+     * @param floorHeight height of each floor
+     */
+    public void setFloorHeight(int floorHeight) {
+        this.floorHeight = floorHeight;
+    }
+
+    /**
+     * Writes the header and the material dictionary and forces all changes to the disk
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void flush() throws IOException {
+        byte[] dictionary = createDictionary();
+        dictionarySize = dictionary.length;
+        channel.write(ByteBuffer.wrap(dictionary), dictionaryOffset());
+        channel.write(createHeader(rows, columns), 0);
+        for (MappedByteBuffer floorBuffer : floorBuffers) {
+            floorBuffer.force();
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Flushes all changes and closes the file. The storage must not be used afterwards.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void close() throws IOException {
+        flush();
+        floorBuffers = new MappedByteBuffer[0];
+        randomAccessFile.close();
+    }
+
+    @Override
+    public void registerMaterials(List<Material> materials) {
+        for (Material material : materials) {
+            palette.getMaterialId(material);
+        }
+    }
+
+    @Override
+    public Material getMaterial(int floor, int row, int column) {
+        return palette.getMaterial(floorBuffers[floor].getShort(index(row, column) << 1));
+    }
+
+    @Override
+    public void setMaterial(int floor, int row, int column, Material material) {
+        floorBuffers[floor].putShort(index(row, column) << 1, palette.getMaterialId(material));
+    }
+
+    @Override
+    public ContentElement getContent(int floor, int row, int column) {
+        int contentNumber = floorBuffers[floor].getInt(contentsOffset() + (index(row, column) << 2));
+        if (contentNumber <= 0 || contentNumber >= contentsByNumber.length) {
+            return null;
+        }
+        return contentsByNumber[contentNumber];
+    }
+
+    /**
+     * Sets the content of a segment. Only the content number is stored.
+     *
+     * @param floor   floor number
+     * @param row     row number
+     * @param column  column number
+     * @param content content or null
+     * @throws IllegalArgumentException if the content number is not positive
+     */
+    @Override
+    public void setContent(int floor, int row, int column, ContentElement content) {
+        int contentNumber = 0;
+        if (content != null) {
+            registerContent(content);
+            contentNumber = content.getContentNumber();
+        }
+        floorBuffers[floor].putInt(contentsOffset() + (index(row, column) << 2), contentNumber);
+    }
+
+    @Override
+    public void fillMaterial(int floor, int row, int startColumn, int endColumn, Material material) {
+        short materialId = palette.getMaterialId(material);
+        MappedByteBuffer buffer = floorBuffers[floor];
+        for (int index = index(row, startColumn); index <= index(row, endColumn); index++) {
+            buffer.putShort(index << 1, materialId);
+        }
+    }
+
+    @Override
+    public MapSegment getMapSegment(int floor, int row, int column, MapSegment flyweight) {
+        flyweight.setMaterial(getMaterial(floor, row, column));
+        flyweight.setContent(getContent(floor, row, column));
+        return flyweight;
+    }
+
+    @Override
+    public void addFloor(int copyFloorNumber) {
+        try {
+            floorBuffers = Arrays.copyOf(floorBuffers, floors + 1);
+            floorBuffers[floors] = mapFloor(floors);
+            ByteBuffer target = floorBuffers[floors].duplicate();
+            if (copyFloorNumber < 0) {
+                clear(target);
+            } else {
+                target.put(floorBuffers[copyFloorNumber].duplicate());
+            }
+            floors++;
+        } catch (IOException e) {
+            throw new IllegalStateException("Floor could not be added to " + file, e);
+        }
+    }
+
+    @Override
+    public void removeFloor(int floorNumber) {
+        for (int floor = floorNumber + 1; floor < floors; floor++) {
+            floorBuffers[floor - 1].duplicate().put(floorBuffers[floor].duplicate());
+        }
+        floors--;
+        floorBuffers = Arrays.copyOf(floorBuffers, floors);
+    }
+
+    @Override
+    public void changeSize(boolean add, int amount, int position) {
+        int changeValue = add ? amount : -amount;
+        int changedRows = rows;
+        int changedColumns = columns;
+        int rowOffset = 0;
+        int columnOffset = 0;
+        if (position == Map.Position.TOP.ordinal()) {
+            changedRows += changeValue;
+            rowOffset = changeValue;
+        } else if (position == Map.Position.BOTTOM.ordinal()) {
+            changedRows += changeValue;
+        } else if (position == Map.Position.LEFT.ordinal()) {
+            changedColumns += changeValue;
+            columnOffset = changeValue;
+        } else {
+            changedColumns += changeValue;
+        }
+        int copyRows = Math.min(rows, changedRows);
+        int copyColumns = Math.min(columns, changedColumns);
+        int changedCells = changedRows * changedColumns;
+        long changedFloorBytes = 6L * changedCells;
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            RandomAccessFile temp = new RandomAccessFile(tempFile, "rw");
+            try {
+                FileChannel tempChannel = temp.getChannel();
+                temp.setLength(0);
+                for (int floor = 0; floor < floors; floor++) {
+                    MappedByteBuffer target = tempChannel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + floor * changedFloorBytes, changedFloorBytes);
+                    clear(target.duplicate());
+                    for (int row = 0; row < copyRows; row++) {
+                        int sourceIndex = (row - Math.min(rowOffset, 0)) * columns - Math.min(columnOffset, 0);
+                        int targetIndex = (row + Math.max(rowOffset, 0)) * changedColumns + Math.max(columnOffset, 0);
+                        copy(floorBuffers[floor], sourceIndex << 1, target, targetIndex << 1, copyColumns << 1);
+                        copy(floorBuffers[floor], contentsOffset() + (sourceIndex << 2), target, (changedCells << 1) + (targetIndex << 2), copyColumns << 2);
+                    }
+                    target.force();
+                }
+                byte[] dictionary = createDictionary();
+                dictionarySize = dictionary.length;
+                tempChannel.write(ByteBuffer.wrap(dictionary), HEADER_SIZE + floors * changedFloorBytes);
+                tempChannel.write(createHeader(changedRows, changedColumns), 0);
+                tempChannel.force(true);
+            } finally {
+                temp.close();
+            }
+            randomAccessFile.close();
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                rows = changedRows;
+                columns = changedColumns;
+            } finally {
+                remap();
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new IllegalStateException("Size of " + file + " could not be changed", e);
+        }
+    }
+
+    /**
+     * Opens the file again and maps all floors, e.g. after the file has been replaced
+     *
+     * @throws IOException if the file could not be opened
+     */
+    protected void remap() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        for (int floor = 0; floor < floors; floor++) {
+            floorBuffers[floor] = mapFloor(floor);
+        }
+    }
+
+    protected synchronized void registerContent(ContentElement content) {
+        int contentNumber = content.getContentNumber();
+        if (contentNumber <= 0) {
+            throw new IllegalArgumentException("Content number must be positive: " + contentNumber);
+        }
+        if (contentNumber >= contentsByNumber.length) {
+            contentsByNumber = Arrays.copyOf(contentsByNumber, Math.max(contentNumber + 1, contentsByNumber.length * 2));
+        }
+        contentsByNumber[contentNumber] = content;
+    }
+
+    protected MappedByteBuffer mapFloor(int floor) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + floor * floorBytes(), floorBytes());
+    }
+
+    protected ByteBuffer createHeader(int rows, int columns) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(columns).putInt(floors).putInt(floorHeight).putInt(dictionarySize);
+        header.rewind();
+        return header;
+    }
+
+    protected byte[] createDictionary() throws IOException {
+        ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream();
+        DataOutputStream dictionary = new DataOutputStream(dictionaryBytes);
+        dictionary.writeInt(palette.getMaterialCount() - 1);
+        for (int id = 1; id < palette.getMaterialCount(); id++) {
+            dictionary.writeUTF(palette.getMaterial(id).getName());
+        }
+        dictionary.close();
+        return dictionaryBytes.toByteArray();
+    }
+
+    protected long floorBytes() {
+        return 6L * rows * columns;
+    }
+
+    protected long dictionaryOffset() {
+        return HEADER_SIZE + floors * floorBytes();
+    }
+
+    protected int contentsOffset() {
+        return (rows * columns) << 1;
+    }
+
+    protected int index(int row, int column) {
+        return row * columns + column;
+    }
+
+    protected static void clear(ByteBuffer buffer) {
+        byte[] zeros = new byte[8192];
+        while (buffer.hasRemaining()) {
+            buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+        }
+    }
+
+    protected static void copy(ByteBuffer source, int sourcePosition, ByteBuffer target, int targetPosition, int length) {
+        ByteBuffer sourceRange = source.duplicate();
+        sourceRange.position(sourcePosition);
+        sourceRange.limit(sourcePosition + length);
+        ByteBuffer targetRange = target.duplicate();
+        targetRange.position(targetPosition);
+        targetRange.put(sourceRange);
+    }
+}
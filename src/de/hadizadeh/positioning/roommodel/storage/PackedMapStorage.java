@@ -0,0 +1,459 @@
+package de.hadizadeh.positioning.roommodel.storage;
+
+import de.hadizadeh.positioning.roommodel.Map;
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.MapSegment;
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores every floor as primitive arrays of material and content ids instead of one map segment object per segment.
+ * Map segments are only produced as flyweights for rendering. The floors are split into square tiles which are placed
+ * relative to a row and column origin, so adding or removing segments at an edge only touches the tiles of that edge.
+ * Tiles without any data are not allocated. Copied floors share their tiles with the original floor, a tile is only
+ * copied when one of the floors writes to it for the first time.
+ */
+public class PackedMapStorage extends MapStorage {
+    /**
+     * Binary logarithm of the tile size
+     */
+    public static final int TILE_SHIFT = 6;
+    /**
+     * Amount of rows and columns of a tile
+     */
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    protected static final int TILE_MASK = TILE_SIZE - 1;
+
+    protected MapPalette palette;
+    protected Tile[][][] tiles;
+    protected int originRow;
+    protected int originColumn;
+
+    /**
+     * Creates an empty storage of a defined size
+     *
+     * @param rows    amount of rows
+     * @param columns amount of columns
+     * @param floors  amount of floors
+     */
+    public PackedMapStorage(int rows, int columns, int floors) {
+        this(rows, columns, floors, new MapPalette());
+    }
+
+    /**
+     * Creates an empty storage of a defined size
+     *
+     * @param rows    amount of rows
+     * @param columns amount of columns
+     * @param floors  amount of floors
+     * @param palette palette for the material and content ids
+     */
+    public PackedMapStorage(int rows, int columns, int floors, MapPalette palette) {
+        super(rows, columns, floors);
+        this.palette = palette;
+        tiles = new Tile[floors][][];
+        for (int floor = 0; floor < floors; floor++) {
+            tiles[floor] = new Tile[tileCount(rows)][tileCount(columns)];
+        }
+    }
+
+    /**
+     * Returns the palette of the material and content ids
+     *
+     * @return palette
+     */
+    public MapPalette getPalette() {
+        return palette;
+    }
+
+    @Override
+    public int getRowBandStart(int row) {
+        return Math.max(((row + originRow) & ~TILE_MASK) - originRow, 0);
+    }
+
+    @Override
+    public void registerMaterials(List<Material> materials) {
+        for (Material material : materials) {
+            palette.getMaterialId(material);
+        }
+    }
+
+    @Override
+    public Material getMaterial(int floor, int row, int column) {
+        Tile tile = tile(floor, row, column);
+        if (tile == null) {
+            return null;
+        }
+        return palette.getMaterial(tile.materials[tileIndex(row, column)]);
+    }
+
+    @Override
+    public void setMaterial(int floor, int row, int column, Material material) {
+        short materialId = palette.getMaterialId(material);
+        Tile tile = tile(floor, row, column);
+        int index = tileIndex(row, column);
+        if (tile == null ? materialId == 0 : tile.materials[index] == materialId) {
+            return;
+        }
+        writableTile(floor, row, column).materials[index] = materialId;
+    }
+
+    @Override
+    public ContentElement getContent(int floor, int row, int column) {
+        Tile tile = tile(floor, row, column);
+        if (tile == null || tile.contents == null) {
+            return null;
+        }
+        return palette.getContent(tile.contents[tileIndex(row, column)]);
+    }
+
+    @Override
+    public void setContent(int floor, int row, int column, ContentElement content) {
+        int contentId = palette.getContentId(content);
+        Tile tile = tile(floor, row, column);
+        int index = tileIndex(row, column);
+        if (tile == null || tile.contents == null ? contentId == 0 : tile.contents[index] == contentId) {
+            return;
+        }
+        tile = writableTile(floor, row, column);
+        if (tile.contents == null) {
+            tile.contents = new int[TILE_SIZE * TILE_SIZE];
+        }
+        tile.contents[index] = contentId;
+    }
+
+    @Override
+    public void fillMaterial(int floor, int row, int startColumn, int endColumn, Material material) {
+        short materialId = palette.getMaterialId(material);
+        int tileRow = (row + originRow) >> TILE_SHIFT;
+        int rowIndex = ((row + originRow) & TILE_MASK) << TILE_SHIFT;
+        int column = startColumn + originColumn;
+        while (column <= endColumn + originColumn) {
+            int tileColumn = column >> TILE_SHIFT;
+            int tileEnd = Math.min((tileColumn + 1) << TILE_SHIFT, endColumn + originColumn + 1);
+            Tile tile = tiles[floor][tileRow][tileColumn];
+            if (tile != null || materialId != 0) {
+                tile = ownTile(floor, tileRow, tileColumn);
+                Arrays.fill(tile.materials, rowIndex + (column & TILE_MASK), rowIndex + ((tileEnd - 1) & TILE_MASK) + 1, materialId);
+            }
+            column = tileEnd;
+        }
+    }
+
+    @Override
+    public void fillContent(int floor, int row, int startColumn, int endColumn, ContentElement content) {
+        int contentId = palette.getContentId(content);
+        int tileRow = (row + originRow) >> TILE_SHIFT;
+        int rowIndex = ((row + originRow) & TILE_MASK) << TILE_SHIFT;
+        int column = startColumn + originColumn;
+        while (column <= endColumn + originColumn) {
+            int tileColumn = column >> TILE_SHIFT;
+            int tileEnd = Math.min((tileColumn + 1) << TILE_SHIFT, endColumn + originColumn + 1);
+            Tile tile = tiles[floor][tileRow][tileColumn];
+            if (tile != null && tile.contents != null || contentId != 0) {
+                tile = ownTile(floor, tileRow, tileColumn);
+                if (tile.contents == null) {
+                    tile.contents = new int[TILE_SIZE * TILE_SIZE];
+                }
+                Arrays.fill(tile.contents, rowIndex + (column & TILE_MASK), rowIndex + ((tileEnd - 1) & TILE_MASK) + 1, contentId);
+            }
+            column = tileEnd;
+        }
+    }
+
+    @Override
+    public MapSegment getMapSegment(int floor, int row, int column, MapSegment flyweight) {
+        flyweight.setMaterial(getMaterial(floor, row, column));
+        flyweight.setContent(getContent(floor, row, column));
+        return flyweight;
+    }
+
+    @Override
+    public void addFloor(int copyFloorNumber) {
+        tiles = Arrays.copyOf(tiles, floors + 1);
+        Tile[][] floorTiles = new Tile[tileCount(originRow + rows)][tileCount(originColumn + columns)];
+        if (copyFloorNumber >= 0) {
+            Tile[][] copyTiles = tiles[copyFloorNumber];
+            for (int tileRow = 0; tileRow < floorTiles.length; tileRow++) {
+                for (int tileColumn = 0; tileColumn < floorTiles[tileRow].length; tileColumn++) {
+                    Tile tile = copyTiles[tileRow][tileColumn];
+                    if (tile != null) {
+                        tile.owners.incrementAndGet();
+                        floorTiles[tileRow][tileColumn] = tile;
+                    }
+                }
+            }
+        }
+        tiles[floors] = floorTiles;
+        floors++;
+    }
+
+    @Override
+    public void removeFloor(int floorNumber) {
+        for (Tile[] rowTiles : tiles[floorNumber]) {
+            release(rowTiles, 0, rowTiles.length);
+        }
+        floors--;
+        System.arraycopy(tiles, floorNumber + 1, tiles, floorNumber, floors - floorNumber);
+        tiles = Arrays.copyOf(tiles, floors);
+    }
+
+    @Override
+    public void changeSize(boolean add, int amount, int position) {
+        if (position == Map.Position.TOP.ordinal()) {
+            if (add) {
+                originRow -= amount;
+                if (originRow < 0) {
+                    int addedTileRows = tileCount(-originRow);
+                    for (int floor = 0; floor < floors; floor++) {
+                        Tile[][] floorTiles = new Tile[tiles[floor].length + addedTileRows][];
+                        for (int tileRow = 0; tileRow < addedTileRows; tileRow++) {
+                            floorTiles[tileRow] = new Tile[tileCount(originColumn + columns)];
+                        }
+                        System.arraycopy(tiles[floor], 0, floorTiles, addedTileRows, tiles[floor].length);
+                        tiles[floor] = floorTiles;
+                    }
+                    originRow += addedTileRows * TILE_SIZE;
+                }
+                rows += amount;
+            } else {
+                originRow += amount;
+                rows -= amount;
+                int removedTileRows = originRow >> TILE_SHIFT;
+                for (int floor = 0; floor < floors; floor++) {
+                    for (int tileRow = 0; tileRow < removedTileRows; tileRow++) {
+                        release(tiles[floor][tileRow], 0, tiles[floor][tileRow].length);
+                    }
+                    tiles[floor] = Arrays.copyOfRange(tiles[floor], removedTileRows, tiles[floor].length);
+                }
+                originRow -= removedTileRows * TILE_SIZE;
+                clear(0, originRow, 0, tileCount(originColumn + columns) * TILE_SIZE);
+            }
+        } else if (position == Map.Position.BOTTOM.ordinal()) {
+            rows += add ? amount : -amount;
+            int tileRows = tileCount(originRow + rows);
+            for (int floor = 0; floor < floors; floor++) {
+                int oldTileRows = tiles[floor].length;
+                for (int tileRow = tileRows; tileRow < oldTileRows; tileRow++) {
+                    release(tiles[floor][tileRow], 0, tiles[floor][tileRow].length);
+                }
+                tiles[floor] = Arrays.copyOf(tiles[floor], tileRows);
+                for (int tileRow = oldTileRows; tileRow < tileRows; tileRow++) {
+                    tiles[floor][tileRow] = new Tile[tileCount(originColumn + columns)];
+                }
+            }
+            if (!add) {
+                clear(originRow + rows, tileRows * TILE_SIZE, 0, tileCount(originColumn + columns) * TILE_SIZE);
+            }
+        } else if (position == Map.Position.LEFT.ordinal()) {
+            if (add) {
+                originColumn -= amount;
+                if (originColumn < 0) {
+                    int addedTileColumns = tileCount(-originColumn);
+                    for (int floor = 0; floor < floors; floor++) {
+                        for (int tileRow = 0; tileRow < tiles[floor].length; tileRow++) {
+                            Tile[] rowTiles = new Tile[tiles[floor][tileRow].length + addedTileColumns];
+                            System.arraycopy(tiles[floor][tileRow], 0, rowTiles, addedTileColumns, tiles[floor][tileRow].length);
+                            tiles[floor][tileRow] = rowTiles;
+                        }
+                    }
+                    originColumn += addedTileColumns * TILE_SIZE;
+                }
+                columns += amount;
+            } else {
+                originColumn += amount;
+                columns -= amount;
+                int removedTileColumns = originColumn >> TILE_SHIFT;
+                for (int floor = 0; floor < floors; floor++) {
+                    for (int tileRow = 0; tileRow < tiles[floor].length; tileRow++) {
+                        release(tiles[floor][tileRow], 0, removedTileColumns);
+                        tiles[floor][tileRow] = Arrays.copyOfRange(tiles[floor][tileRow], removedTileColumns, tiles[floor][tileRow].length);
+                    }
+                }
+                originColumn -= removedTileColumns * TILE_SIZE;
+                clear(0, tileCount(originRow + rows) * TILE_SIZE, 0, originColumn);
+            }
+        } else {
+            columns += add ? amount : -amount;
+            int tileColumns = tileCount(originColumn + columns);
+            for (int floor = 0; floor < floors; floor++) {
+                for (int tileRow = 0; tileRow < tiles[floor].length; tileRow++) {
+                    release(tiles[floor][tileRow], tileColumns, tiles[floor][tileRow].length);
+                    tiles[floor][tileRow] = Arrays.copyOf(tiles[floor][tileRow], tileColumns);
+                }
+            }
+            if (!add) {
+                clear(0, tileCount(originRow + rows) * TILE_SIZE, originColumn + columns, tileColumns * TILE_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Creates a snapshot which shares all tiles with this storage, a tile is only copied when one of the storages
+     * writes to it for the first time. The snapshot has to be released after it has been used.
+     *
+     * @return snapshot of the storage
+     */
+    @Override
+    public MapStorage snapshot() {
+        PackedMapStorage snapshot = new PackedMapStorage(rows, columns, 0, palette);
+        snapshot.floors = floors;
+        snapshot.originRow = originRow;
+        snapshot.originColumn = originColumn;
+        snapshot.tiles = new Tile[floors][][];
+        for (int floor = 0; floor < floors; floor++) {
+            snapshot.tiles[floor] = new Tile[tiles[floor].length][];
+            for (int tileRow = 0; tileRow < tiles[floor].length; tileRow++) {
+                Tile[] rowTiles = tiles[floor][tileRow].clone();
+                for (Tile tile : rowTiles) {
+                    if (tile != null) {
+                        tile.owners.incrementAndGet();
+                    }
+                }
+                snapshot.tiles[floor][tileRow] = rowTiles;
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void release() {
+        for (Tile[][] floorTiles : tiles) {
+            for (Tile[] rowTiles : floorTiles) {
+                for (Tile tile : rowTiles) {
+                    if (tile != null) {
+                        tile.owners.decrementAndGet();
+                    }
+                }
+            }
+        }
+        tiles = new Tile[0][][];
+        floors = 0;
+    }
+
+    /**
+     * Clears all segments of a region of every floor. The region is given in tile coordinates (including the origin).
+     * Segments outside of the map are always kept empty, so segments which are added later start without data.
+     *
+     * @param startRow    first row of the region
+     * @param endRow      row after the region
+     * @param startColumn first column of the region
+     * @param endColumn   column after the region
+     */
+    protected void clear(int startRow, int endRow, int startColumn, int endColumn) {
+        if (startRow >= endRow || startColumn >= endColumn) {
+            return;
+        }
+        for (int floor = 0; floor < floors; floor++) {
+            for (int tileRow = startRow >> TILE_SHIFT; tileRow <= (endRow - 1) >> TILE_SHIFT; tileRow++) {
+                for (int tileColumn = startColumn >> TILE_SHIFT; tileColumn <= (endColumn - 1) >> TILE_SHIFT; tileColumn++) {
+                    Tile tile = tiles[floor][tileRow][tileColumn];
+                    int fromColumn = Math.max(startColumn - tileColumn * TILE_SIZE, 0);
+                    int toColumn = Math.min(endColumn - tileColumn * TILE_SIZE, TILE_SIZE);
+                    int fromRow = Math.max(startRow - tileRow * TILE_SIZE, 0);
+                    int toRow = Math.min(endRow - tileRow * TILE_SIZE, TILE_SIZE);
+                    if (tile == null || tile.isEmpty(fromRow, toRow, fromColumn, toColumn)) {
+                        continue;
+                    }
+                    tile = ownTile(floor, tileRow, tileColumn);
+                    for (int row = fromRow; row < toRow; row++) {
+                        Arrays.fill(tile.materials, (row << TILE_SHIFT) + fromColumn, (row << TILE_SHIFT) + toColumn, (short) 0);
+                        if (tile.contents != null) {
+                            Arrays.fill(tile.contents, (row << TILE_SHIFT) + fromColumn, (row << TILE_SHIFT) + toColumn, 0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells the tiles of a range that one of their floors is not using them any longer
+     *
+     * @param rowTiles    tiles of a tile row
+     * @param startColumn first tile column of the range
+     * @param endColumn   tile column after the range
+     */
+    protected void release(Tile[] rowTiles, int startColumn, int endColumn) {
+        for (int tileColumn = startColumn; tileColumn < endColumn; tileColumn++) {
+            if (rowTiles[tileColumn] != null) {
+                rowTiles[tileColumn].owners.decrementAndGet();
+            }
+        }
+    }
+
+    protected Tile tile(int floor, int row, int column) {
+        return tiles[floor][(row + originRow) >> TILE_SHIFT][(column + originColumn) >> TILE_SHIFT];
+    }
+
+    protected Tile writableTile(int floor, int row, int column) {
+        return ownTile(floor, (row + originRow) >> TILE_SHIFT, (column + originColumn) >> TILE_SHIFT);
+    }
+
+    /**
+     * Returns a tile which is only used by the given floor. New tiles are created and shared tiles are copied.
+     *
+     * @param floor      floor number
+     * @param tileRow    row of the tile
+     * @param tileColumn column of the tile
+     * @return tile which may be changed
+     */
+    protected Tile ownTile(int floor, int tileRow, int tileColumn) {
+        Tile tile = tiles[floor][tileRow][tileColumn];
+        if (tile == null) {
+            tile = new Tile();
+            tiles[floor][tileRow][tileColumn] = tile;
+        } else if (tile.owners.get() > 1) {
+            Tile copy = new Tile(tile);
+            tile.owners.decrementAndGet();
+            tile = copy;
+            tiles[floor][tileRow][tileColumn] = tile;
+        }
+        return tile;
+    }
+
+    protected int tileIndex(int row, int column) {
+        return (((row + originRow) & TILE_MASK) << TILE_SHIFT) | ((column + originColumn) & TILE_MASK);
+    }
+
+    protected static int tileCount(int segments) {
+        return (segments + TILE_MASK) >> TILE_SHIFT;
+    }
+
+    /**
+     * Square block of segments. The content ids are only allocated if a content is set. A tile may be shared by
+     * several floors or snapshots, the owner count tells how many of them are using it. The count is changed
+     * atomically, because snapshots are released by other threads. A shared tile is copied before the count is
+     * decreased, so floors which are written in parallel never see a partially written copy.
+     */
+    protected static class Tile {
+        protected short[] materials;
+        protected int[] contents;
+        protected final AtomicInteger owners = new AtomicInteger(1);
+
+        protected Tile() {
+            materials = new short[TILE_SIZE * TILE_SIZE];
+        }
+
+        protected Tile(Tile copy) {
+            materials = copy.materials.clone();
+            if (copy.contents != null) {
+                contents = copy.contents.clone();
+            }
+        }
+
+        protected boolean isEmpty(int fromRow, int toRow, int fromColumn, int toColumn) {
+            for (int row = fromRow; row < toRow; row++) {
+                for (int index = (row << TILE_SHIFT) + fromColumn; index < (row << TILE_SHIFT) + toColumn; index++) {
+                    if (materials[index] != 0 || contents != null && contents[index] != 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package de.hadizadeh.positioning.roommodel.storage;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits work on the segments of a map into floors and bands of rows and processes them in a fork join pool. The
+ * bands are aligned by the storage, so two bands never write into the same block of a storage.
+ */
+public class RowBandTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Minimum amount of segments of a band, smaller bands are not split any further
+     */
+    public static final int MIN_SEGMENTS = 16384;
+
+    /**
+     * Work on a band of rows of a single floor
+     */
+    public static interface Work {
+        void process(int floor, int startRow, int endRow);
+    }
+
+    protected MapStorage storage;
+    protected int columns;
+    protected int startFloor;
+    protected int endFloor;
+    protected int startRow;
+    protected int endRow;
+    protected Work work;
+
+    protected RowBandTask(MapStorage storage, int columns, int startFloor, int endFloor, int startRow, int endRow, Work work) {
+        this.storage = storage;
+        this.columns = columns;
+        this.startFloor = startFloor;
+        this.endFloor = endFloor;
+        this.startRow = startRow;
+        this.endRow = endRow;
+        this.work = work;
+    }
+
+    /**
+     * Processes all rows of a range of floors. Without a pool, the floors are processed one after another in the
+     * calling thread.
+     *
+     * @param forkJoinPool pool for parallel processing or null
+     * @param storage      storage which defines the alignment of the bands
+     * @param startFloor   first floor
+     * @param endFloor     floor after the last floor
+     * @param rows         amount of rows
+     * @param columns      amount of columns
+     * @param work         work for every band
+     */
+    public static void execute(ForkJoinPool forkJoinPool, MapStorage storage, int startFloor, int endFloor, int rows, int columns, Work work) {
+        if (forkJoinPool == null) {
+            for (int floor = startFloor; floor < endFloor; floor++) {
+                work.process(floor, 0, rows);
+            }
+        } else if (endFloor > startFloor) {
+            forkJoinPool.invoke(new RowBandTask(storage, columns, startFloor, endFloor, 0, rows, work));
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (endFloor - startFloor > 1) {
+            int middleFloor = (startFloor + endFloor) >>> 1;
+            invokeAll(new RowBandTask(storage, columns, startFloor, middleFloor, startRow, endRow, work),
+                    new RowBandTask(storage, columns, middleFloor, endFloor, startRow, endRow, work));
+            return;
+        }
+        if ((long) (endRow - startRow) * columns > 2 * MIN_SEGMENTS) {
+            int middleRow = storage.getRowBandStart((startRow + endRow) >>> 1);
+            if (middleRow > startRow) {
+                invokeAll(new RowBandTask(storage, columns, startFloor, endFloor, startRow, middleRow, work),
+                        new RowBandTask(storage, columns, startFloor, endFloor, middleRow, endRow, work));
+                return;
+            }
+        }
+        work.process(startFloor, startRow, endRow);
+    }
+}
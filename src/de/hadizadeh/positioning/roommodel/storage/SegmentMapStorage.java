@@ -0,0 +1,167 @@
+package de.hadizadeh.positioning.roommodel.storage;
+
+import de.hadizadeh.positioning.roommodel.Map;
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.MapSegment;
+import de.hadizadeh.positioning.roommodel.model.Material;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Stores one map segment object per segment of the map. Creating, copying and resizing the segments runs in parallel
+ * over floors and row bands, if a fork join pool is set.
+ */
+public class SegmentMapStorage extends MapStorage {
+    protected Map map;
+    protected MapSegment[][][] mapSegments;
+
+    /**
+     * Creates a storage and fills it with new map segments of the map
+     *
+     * @param map     map which creates and copies the map segments
+     * @param rows    amount of rows
+     * @param columns amount of columns
+     * @param floors  amount of floors
+     */
+    public SegmentMapStorage(Map map, int rows, int columns, int floors) {
+        this(map, rows, columns, floors, null);
+    }
+
+    /**
+     * Creates a storage and fills it with new map segments of the map. With a pool, the segments are created in
+     * parallel, so the map has to be able to create segments in several threads at once.
+     *
+     * @param map          map which creates and copies the map segments
+     * @param rows         amount of rows
+     * @param columns      amount of columns
+     * @param floors       amount of floors
+     * @param forkJoinPool pool for parallel bulk operations or null
+     */
+    public SegmentMapStorage(final Map map, int rows, int columns, int floors, ForkJoinPool forkJoinPool) {
+        super(rows, columns, floors);
+        this.map = map;
+        this.forkJoinPool = forkJoinPool;
+        mapSegments = new MapSegment[floors][rows][columns];
+        final MapSegment[][][] createdMapSegments = mapSegments;
+        RowBandTask.execute(forkJoinPool, this, 0, floors, rows, columns, new RowBandTask.Work() {
+            @Override
+            public void process(int floor, int startRow, int endRow) {
+                for (int row = startRow; row < endRow; row++) {
+                    for (int column = 0; column < createdMapSegments[floor][row].length; column++) {
+                        createdMapSegments[floor][row][column] = map.createMapSegment();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns all map segments
+     *
+     * @return map segments of all floors
+     */
+    public MapSegment[][][] getMapSegments() {
+        return mapSegments;
+    }
+
+    /**
+     * Replaces all map segments
+     *
+     * @param mapSegments map segments of all floors
+     */
+    public void setMapSegments(MapSegment[][][] mapSegments) {
+        this.mapSegments = mapSegments;
+    }
+
+    @Override
+    public Material getMaterial(int floor, int row, int column) {
+        return mapSegments[floor][row][column].getMaterial();
+    }
+
+    @Override
+    public void setMaterial(int floor, int row, int column, Material material) {
+        mapSegments[floor][row][column].setMaterial(material);
+    }
+
+    @Override
+    public ContentElement getContent(int floor, int row, int column) {
+        return mapSegments[floor][row][column].getContent();
+    }
+
+    @Override
+    public void setContent(int floor, int row, int column, ContentElement content) {
+        mapSegments[floor][row][column].setContent(content);
+    }
+
+    @Override
+    public MapSegment getMapSegment(int floor, int row, int column, MapSegment flyweight) {
+        return mapSegments[floor][row][column];
+    }
+
+    @Override
+    public void addFloor(final int copyFloorNumber) {
+        final MapSegment[][] floorSegments = new MapSegment[rows][columns];
+        RowBandTask.execute(forkJoinPool, this, 0, 1, rows, columns, new RowBandTask.Work() {
+            @Override
+            public void process(int floor, int startRow, int endRow) {
+                for (int row = startRow; row < endRow; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        if (copyFloorNumber < 0) {
+                            floorSegments[row][column] = map.createMapSegment();
+                        } else {
+                            floorSegments[row][column] = map.copyMapSegment(mapSegments[copyFloorNumber][row][column]);
+                        }
+                    }
+                }
+            }
+        });
+        mapSegments = Arrays.copyOf(mapSegments, floors + 1);
+        mapSegments[floors] = floorSegments;
+        floors++;
+    }
+
+    @Override
+    public void removeFloor(int floorNumber) {
+        floors--;
+        MapSegment[][][] changedMapSegments = new MapSegment[floors][][];
+        System.arraycopy(mapSegments, 0, changedMapSegments, 0, floorNumber);
+        System.arraycopy(mapSegments, floorNumber + 1, changedMapSegments, floorNumber, floors - floorNumber);
+        mapSegments = changedMapSegments;
+    }
+
+    @Override
+    public void changeSize(final boolean add, final int amount, final int position) {
+        int changedRows = rows;
+        int changedColumns = columns;
+        int changeValue = add ? amount : -amount;
+        if (position < Map.Position.LEFT.ordinal()) {
+            changedRows += changeValue;
+        } else {
+            changedColumns += changeValue;
+        }
+        final int rowOffset = position == Map.Position.TOP.ordinal() ? amount : 0;
+        final int columnOffset = position == Map.Position.LEFT.ordinal() ? amount : 0;
+        final MapSegment[][][] changedMapSegments = new MapSegment[floors][changedRows][changedColumns];
+        RowBandTask.execute(forkJoinPool, this, 0, floors, changedRows, changedColumns, new RowBandTask.Work() {
+            @Override
+            public void process(int floor, int startRow, int endRow) {
+                for (int row = startRow; row < endRow; row++) {
+                    MapSegment[] changedRow = changedMapSegments[floor][row];
+                    for (int column = 0; column < changedRow.length; column++) {
+                        if (!add) {
+                            changedRow[column] = map.copyMapSegment(mapSegments[floor][row + rowOffset][column + columnOffset]);
+                        } else if (row < rowOffset || row - rowOffset >= rows || column < columnOffset || column - columnOffset >= columns) {
+                            changedRow[column] = map.createMapSegment();
+                        } else {
+                            changedRow[column] = map.copyMapSegment(mapSegments[floor][row - rowOffset][column - columnOffset]);
+                        }
+                    }
+                }
+            }
+        });
+        rows = changedRows;
+        columns = changedColumns;
+        mapSegments = changedMapSegments;
+    }
+}
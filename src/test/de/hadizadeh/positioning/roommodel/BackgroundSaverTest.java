@@ -0,0 +1,65 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.BackgroundSaver;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BackgroundSaverTest extends TestCase {
+
+    private List<String> saved = Collections.synchronizedList(new ArrayList<String>());
+    private List<String> replaced = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testQueuedSavesAreReplaced() throws Exception {
+        BackgroundSaver saver = new BackgroundSaver(Executors.newFixedThreadPool(2));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Void> first = saver.submit("a", new TestSave("first", started, release));
+        started.await();
+        Future<Void> second = saver.submit("a", new TestSave("second", null, null));
+        Future<Void> third = saver.submit("a", new TestSave("third", null, null));
+        Future<Void> other = saver.submit("b", new TestSave("other", null, null));
+        other.get();
+        assertSame(second, third);
+        assertFalse(first.isDone());
+        release.countDown();
+        third.get();
+        first.get();
+        assertEquals(Arrays.asList("other", "first", "third"), saved);
+        assertEquals(Collections.singletonList("second"), replaced);
+        saver.shutdown();
+    }
+
+    private class TestSave extends BackgroundSaver.Save {
+        private String name;
+        private CountDownLatch started;
+        private CountDownLatch release;
+
+        private TestSave(String name, CountDownLatch started, CountDownLatch release) {
+            this.name = name;
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            if (started != null) {
+                started.countDown();
+                release.await();
+            }
+            saved.add(name);
+            return null;
+        }
+
+        @Override
+        protected void replacedBy(BackgroundSaver.Save newerSave) {
+            replaced.add(name);
+        }
+    }
+}
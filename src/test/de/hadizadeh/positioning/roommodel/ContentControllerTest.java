@@ -1,11 +1,25 @@
 package test.de.hadizadeh.positioning.roommodel;
 
+import de.hadizadeh.positioning.controller.MappedPositionManager;
 import de.hadizadeh.positioning.model.MappingPoint;
+import de.hadizadeh.positioning.roommodel.BackgroundSaver;
 import de.hadizadeh.positioning.roommodel.ContentController;
+import de.hadizadeh.positioning.roommodel.FileManager;
 import de.hadizadeh.positioning.roommodel.model.ContentElement;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class ContentControllerTest extends TestCase {
 
     private ContentController contentController;
@@ -34,6 +48,112 @@ public class ContentControllerTest extends TestCase {
         assertNull(contentController.getContent(new MappingPoint(0, 0, 0)));
     }
 
+    public void testPositionIndex() throws Exception {
+        TestContentController controller = new TestContentController();
+        ContentElement first = controller.getContents("en").get(0);
+        ContentElement second = controller.getContents("en").get(1);
+        controller.addPosition(first, new MappingPoint(1, 2, 0));
+        controller.addPosition(new ContentElement(second), new MappingPoint(-3, 4, 2));
+        assertSame(first, controller.getContent(new MappingPoint(1, 2, 0)));
+        assertSame(second, controller.getContent(new MappingPoint(-3, 4, 2)));
+        assertNull(controller.getContent(new MappingPoint(1, 2, 2)));
+
+        controller.removePosition(new MappingPoint(1, 2, 0));
+        assertNull(controller.getContent(new MappingPoint(1, 2, 0)));
+        assertSame(second, controller.getContent(new MappingPoint(-3, 4, 2)));
+
+        controller.addPosition(first, new MappingPoint(-3, 4, 2));
+        assertSame(first, controller.getContent(new MappingPoint(-3, 4, 2)));
+
+        controller.removeAllPositions();
+        assertNull(controller.getContent(new MappingPoint(-3, 4, 2)));
+
+        second.getPositions().add("invalid position");
+        controller.updatePositionIndex();
+        second.getPositions().add(MappedPositionManager.mappingPointToName(new MappingPoint(5, 6, 0)));
+        assertSame(second, controller.getContent(new MappingPoint(5, 6, 0)));
+    }
+
+    public void testSaveChangedTexts() throws Exception {
+        File dir = FileManager.getTmpName("ContentControllerTest");
+        TestContentController controller = new TestContentController();
+        controller.getContents("en").get(0).setTitle("title");
+        controller.save(dir.getPath());
+        File titleFile = new File(dir, "content" + File.separator + "en" + File.separator + "1-title.txt");
+        assertEquals("title", FileManager.readTextFile(titleFile.getPath()));
+
+        assertTrue(titleFile.delete());
+        controller.save(dir.getPath());
+        assertFalse(titleFile.exists());
+
+        controller.getContents("en").get(0).setTitle("changed");
+        controller.save(dir.getPath());
+        assertEquals("changed", FileManager.readTextFile(titleFile.getPath()));
+        FileManager.removeDirectory(dir);
+    }
+
+    public void testReplacedSaveAsync() throws Exception {
+        File dir = FileManager.getTmpName("ContentControllerTest");
+        TestContentController controller = new TestContentController();
+        controller.getContents("en").get(0).setTitle("title 1");
+        controller.getContents("en").get(1).setTitle("title 2");
+        controller.save(dir.getPath());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        controller.setBackgroundSaver(new BackgroundSaver(executor));
+        controller.saveAsync(dir.getPath());
+        controller.getContents("en").get(0).setTitle("changed 1");
+        Future<Void> replacedSave = controller.saveAsync(dir.getPath());
+        controller.getContents("en").get(1).setTitle("changed 2");
+        Future<Void> save = controller.saveAsync(dir.getPath());
+        assertSame(replacedSave, save);
+        release.countDown();
+        save.get();
+        executor.shutdown();
+
+        File languageDir = new File(dir, "content" + File.separator + "en");
+        assertEquals("changed 1", FileManager.readTextFile(new File(languageDir, "1-title.txt").getPath()));
+        assertEquals("changed 2", FileManager.readTextFile(new File(languageDir, "2-title.txt").getPath()));
+        FileManager.removeDirectory(dir);
+    }
+
+    public void testSaveMediaFiles() throws Exception {
+        File dir = FileManager.getTmpName("ContentControllerTest");
+        TestContentController controller = new TestContentController();
+        ContentElement element = controller.getContents("de").get(1);
+        element.setImageFile(new File("lib/junit-4.12.jar"));
+        element.setImageUpdated(true);
+        element.setAudioFile(new File(dir, "missing.mp3"));
+        element.setAudioUpdated(true);
+        controller.save(dir.getPath());
+        assertTrue(controller.getSaveError() instanceof IOException);
+        File imageFile = new File(dir, "content" + File.separator + "de" + File.separator + "2.jpg");
+        File audioFile = new File(dir, "content" + File.separator + "de" + File.separator + "2.mp3");
+        assertEquals(FileManager.calculateHash(element.getImageFile()), FileManager.calculateHash(imageFile));
+        assertEquals(1, controller.getMediaTransferErrors().size());
+        assertTrue(controller.getMediaTransferErrors().containsKey(audioFile.getAbsoluteFile()));
+        assertTrue(element.isAudioUpdated());
+
+        element.setAudioFile(null);
+        controller.save(dir.getPath());
+        assertNull(controller.getSaveError());
+        assertTrue(controller.getMediaTransferErrors().isEmpty());
+        assertFalse(element.isImageUpdated());
+        assertFalse(audioFile.exists());
+        FileManager.removeDirectory(dir);
+    }
+
     public void testGetContents() throws Exception {
         assertNull(contentController.getContents("en"));
     }
@@ -41,4 +161,17 @@ public class ContentControllerTest extends TestCase {
     public void testSave() throws Exception {
         contentController.save("");
     }
-}
\ No newline at end of file
+
+    private static class TestContentController extends ContentController {
+        private TestContentController() {
+            contentElements = new LinkedHashMap<String, List<ContentElement>>();
+            languages = Arrays.asList("en", "de");
+            for (String language : languages) {
+                List<ContentElement> elements = new ArrayList<ContentElement>();
+                elements.add(new ContentElement(1));
+                elements.add(new ContentElement(2));
+                contentElements.put(language, elements);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.ContentPositionIndex;
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import junit.framework.TestCase;
+
+public class ContentPositionIndexTest extends TestCase {
+
+    public void testPutAndGet() throws Exception {
+        ContentPositionIndex index = new ContentPositionIndex();
+        ContentElement[] contents = new ContentElement[50];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = new ContentElement(i);
+        }
+        for (int x = -20; x < 20; x++) {
+            for (int y = 0; y < 30; y++) {
+                index.put(x, y, x & 3, contents[(x + 20 + y) % contents.length]);
+            }
+        }
+        assertEquals(40 * 30, index.size());
+        for (int x = -20; x < 20; x++) {
+            for (int y = 0; y < 30; y++) {
+                assertSame(contents[(x + 20 + y) % contents.length], index.get(x, y, x & 3));
+                assertNull(index.get(x, y, (x & 3) + 1));
+            }
+        }
+    }
+
+    public void testFirstContentWins() throws Exception {
+        ContentPositionIndex index = new ContentPositionIndex();
+        ContentElement first = new ContentElement(1);
+        index.put(3, 4, 5, first);
+        index.put(3, 4, 5, new ContentElement(2));
+        assertSame(first, index.get(3, 4, 5));
+        assertEquals(1, index.size());
+    }
+
+    public void testRemove() throws Exception {
+        ContentPositionIndex index = new ContentPositionIndex();
+        ContentElement content = new ContentElement(1);
+        for (int x = 0; x < 100; x++) {
+            index.put(x, x % 7, 0, content);
+        }
+        for (int x = 0; x < 100; x += 2) {
+            assertTrue(index.remove(x, x % 7, 0));
+        }
+        assertFalse(index.remove(0, 0, 0));
+        assertEquals(50, index.size());
+        for (int x = 0; x < 100; x++) {
+            assertEquals(x % 2 == 1 ? content : null, index.get(x, x % 7, 0));
+        }
+    }
+
+    public void testRange() throws Exception {
+        ContentPositionIndex index = new ContentPositionIndex();
+        index.put(-(1 << 20), (1 << 20) - 1, 0, new ContentElement(1));
+        assertNull(index.get(1 << 20, (1 << 20) - 1, 0));
+        try {
+            index.put(1 << 20, 0, 0, new ContentElement(2));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, index.size());
+        }
+    }
+}
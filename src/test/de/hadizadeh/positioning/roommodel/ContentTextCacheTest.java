@@ -0,0 +1,60 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.ContentTextCache;
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import junit.framework.TestCase;
+
+public class ContentTextCacheTest extends TestCase {
+
+    public void testEviction() throws Exception {
+        TestCache cache = new TestCache(10);
+        assertEquals("aaaa", cache.getText("aaaa"));
+        assertEquals("bbbb", cache.getText("bbbb"));
+        assertEquals("aaaa", cache.getText("aaaa"));
+        assertEquals("cccc", cache.getText("cccc"));
+        assertEquals(2, cache.getCount());
+        assertEquals(8, cache.getCharacters());
+        assertEquals(1, cache.getEvictions());
+        assertEquals("aaaa", cache.getText("aaaa"));
+        assertEquals("bbbb", cache.getText("bbbb"));
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(4, cache.reads);
+
+        assertEquals("too long text", cache.getText("too long text"));
+        assertEquals(2, cache.getCount());
+        cache.clear();
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getCharacters());
+    }
+
+    public void testLazyContentElement() throws Exception {
+        TestCache cache = new TestCache(100);
+        ContentElement element = new ContentElement(1);
+        element.setTextSource(cache);
+        element.setTitleFile("title");
+        element.setFullTextFile("text");
+        assertEquals(0, cache.reads);
+        assertEquals("title", element.getTitle());
+        assertEquals("title", new ContentElement(element).getTitle());
+        assertEquals(1, cache.reads);
+        assertNull(element.getDescription());
+        element.setTitle("changed");
+        assertEquals("changed", element.getTitle());
+        assertEquals("text", element.getFullText());
+    }
+
+    private static class TestCache extends ContentTextCache {
+        private int reads;
+
+        private TestCache(long maxCharacters) {
+            super(maxCharacters);
+        }
+
+        @Override
+        protected String readText(String file) {
+            reads++;
+            return file;
+        }
+    }
+}
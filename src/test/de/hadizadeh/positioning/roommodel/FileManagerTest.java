@@ -20,6 +20,20 @@ public class FileManagerTest extends TestCase {
         assertEquals("2973d150c0dc1fefe998f834810d68f278ea58ec", FileManager.calculateHash(new File("lib/junit-4.12.jar")));
     }
 
+    public void testTransferFile() throws Exception {
+        File dir = new File("testdata");
+        dir.mkdir();
+        File source = new File("lib/junit-4.12.jar");
+        File copy = new File(dir, "copy.jar");
+        File link = new File(dir, "link.jar");
+        FileManager.transferFile(source, copy, false);
+        FileManager.transferFile(source, link, true);
+        FileManager.transferFile(copy, copy, false);
+        assertEquals(FileManager.calculateHash(source), FileManager.calculateHash(copy));
+        assertEquals(FileManager.calculateHash(source), FileManager.calculateHash(link));
+        FileManager.removeDirectory(dir);
+    }
+
     public void testRemoveDirectory() throws Exception {
         File dir = new File("testdata");
         dir.mkdir();
@@ -0,0 +1,72 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.Map;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MapDirtyRegionTest extends TestCase {
+
+    private TestMap map;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        map = new TestMap(20, 30, 2);
+        map.clearDirtyRegion();
+    }
+
+    public void testMergeRegions() throws Exception {
+        assertFalse(map.isDirty());
+        assertNull(map.getDirtyRegion());
+        map.markDirty(0, 2, 3);
+        assertTrue(Arrays.equals(new int[]{2, 3, 2, 3}, map.getDirtyRegion()));
+        map.markDirty(0, 5, 1, 6, 2);
+        assertTrue(Arrays.equals(new int[]{2, 1, 6, 3}, map.getDirtyRegion()));
+        map.setMaterial(0, 10, 20, new Material("wall"));
+        assertTrue(Arrays.equals(new int[]{2, 1, 10, 20}, map.getDirtyRegion()));
+    }
+
+    public void testIgnoreOtherFloors() throws Exception {
+        map.markDirty(1, 2, 3);
+        map.setMaterial(1, 4, 4, new Material("wall"));
+        assertFalse(map.isDirty());
+    }
+
+    public void testFloorSwitchAndResize() throws Exception {
+        map.setCurrentFloor(1);
+        assertTrue(Arrays.equals(new int[]{0, 0, 19, 29}, map.getDirtyRegion()));
+        map.clearDirtyRegion();
+        map.setCurrentFloor(1);
+        assertFalse(map.isDirty());
+        map.addMapSegments(2, Map.Position.BOTTOM.ordinal());
+        assertTrue(Arrays.equals(new int[]{0, 0, 21, 29}, map.getDirtyRegion()));
+    }
+
+    public void testClampDirtyRegion() throws Exception {
+        map.markDirty(0, 15, 25, 40, 50);
+        assertTrue(Arrays.equals(new int[]{15, 25, 19, 29}, map.getDirtyRegion()));
+    }
+
+    public void testRenderDirtyKeepsInvisibleChanges() throws Exception {
+        map.markDirty(0, 2, 2, 15, 4);
+        List<int[]> painted = new ArrayList<int[]>();
+        map.renderDirty(painted, 0, 0, 9, 29);
+        assertEquals(8 * 3, painted.size());
+        assertTrue(Arrays.equals(new int[]{10, 2, 15, 4}, map.getDirtyRegion()));
+
+        painted.clear();
+        map.renderDirty(painted, 10, 0, 9, 29);
+        assertEquals(6 * 3, painted.size());
+        assertFalse(map.isDirty());
+
+        map.markDirty(0, 0, 0, 19, 29);
+        map.renderDirty(painted, 5, 5, 5, 5);
+        assertTrue(Arrays.equals(new int[]{0, 0, 19, 29}, map.getDirtyRegion()));
+        map.renderDirty(painted, 0, 0, 19, 29);
+        assertFalse(map.isDirty());
+    }
+}
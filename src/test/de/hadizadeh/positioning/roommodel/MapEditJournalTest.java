@@ -0,0 +1,85 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.Map;
+import de.hadizadeh.positioning.roommodel.MapEditJournal;
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.PackedMapStorage;
+import junit.framework.TestCase;
+
+public class MapEditJournalTest extends TestCase {
+
+    private Material wall = new Material("wall");
+    private Material door = new Material("door");
+    private ContentElement content = new ContentElement(1);
+
+    private Map map;
+    private MapEditJournal journal;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        map = new TestMap(new PackedMapStorage(20, 30, 2));
+        journal = new MapEditJournal(1000);
+        map.setEditJournal(journal);
+    }
+
+    public void testUndoAndRedo() throws Exception {
+        map.setMaterial(0, 1, 1, wall);
+        map.fillRectangle(0, 0, 0, 9, 9, door);
+        map.setContent(1, 5, 5, content);
+        assertEquals(102, journal.getDeltaCount());
+        assertTrue(map.undo());
+        assertNull(map.getContent(1, 5, 5));
+        assertTrue(map.undo());
+        assertEquals(wall, map.getMaterial(0, 1, 1));
+        assertNull(map.getMaterial(0, 9, 9));
+        assertTrue(map.redo());
+        assertEquals(door, map.getMaterial(0, 1, 1));
+        assertEquals(100, map.getMaterialIndex().count(0, door));
+        assertTrue(map.undo());
+        assertTrue(map.undo());
+        assertFalse(map.undo());
+        assertNull(map.getMaterial(0, 1, 1));
+        map.setMaterial(1, 0, 0, wall);
+        assertFalse(map.redo());
+    }
+
+    public void testStrokesAreMerged() throws Exception {
+        map.beginEdit();
+        map.setMaterial(0, 3, 3, wall);
+        map.setMaterial(0, 3, 3, door);
+        map.setMaterial(0, 4, 4, wall);
+        map.setMaterial(0, 4, 4, null);
+        map.drawLine(0, 0, 0, 0, 29, wall);
+        map.endEdit();
+        assertEquals(31, journal.getDeltaCount());
+        assertTrue(map.undo());
+        assertFalse(journal.canUndo());
+        assertNull(map.getMaterial(0, 3, 3));
+        assertNull(map.getMaterial(0, 0, 29));
+    }
+
+    public void testBoundedMemory() throws Exception {
+        journal = new MapEditJournal(300);
+        map.setEditJournal(journal);
+        for (int row = 0; row < 20; row++) {
+            map.fillRectangle(1, row, 0, row, 29, wall);
+        }
+        assertTrue(journal.getDeltaCount() <= 300);
+        int undone = 0;
+        while (map.undo()) {
+            undone++;
+        }
+        assertTrue(undone < 20);
+        assertEquals(wall, map.getMaterial(1, 0, 0));
+        assertNull(map.getMaterial(1, 19, 0));
+    }
+
+    public void testStructuralChangesClearTheJournal() throws Exception {
+        map.setMaterial(0, 1, 1, wall);
+        map.addMapSegments(2, Map.Position.TOP.ordinal());
+        assertFalse(map.undo());
+        assertEquals(wall, map.getMaterial(0, 3, 1));
+    }
+}
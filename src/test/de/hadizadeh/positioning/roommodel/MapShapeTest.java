@@ -0,0 +1,86 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.Map;
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.PackedMapStorage;
+import junit.framework.TestCase;
+
+public class MapShapeTest extends TestCase {
+
+    private Material wall = new Material("wall");
+    private Material floorMaterial = new Material("floor");
+    private ContentElement content = new ContentElement(1);
+
+    private Map segmentMap;
+    private Map packedMap;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        segmentMap = new TestMap(40, 150, 2);
+        packedMap = new TestMap(new PackedMapStorage(40, 150, 2));
+    }
+
+    public void testFillRectangle() throws Exception {
+        for (Map map : new Map[]{segmentMap, packedMap}) {
+            map.getMaterialIndex();
+            map.fillRectangle(0, -5, 60, 10, 200, wall);
+            assertEquals(11 * 90, map.getMaterialIndex().count(0, wall));
+            assertEquals(wall, map.getMaterial(0, 10, 149));
+            assertNull(map.getMaterial(0, 11, 60));
+            assertNull(map.getMaterial(0, 0, 59));
+            map.fillRectangle(0, 2, 62, 3, 130, (Material) null);
+            assertEquals(11 * 90 - 2 * 69, map.getMaterialIndex().count(0, wall));
+        }
+        assertSameMaps();
+    }
+
+    public void testDrawLine() throws Exception {
+        for (Map map : new Map[]{segmentMap, packedMap}) {
+            map.drawLine(0, 0, 0, 10, 10, wall);
+            map.drawLine(0, 20, 100, 22, 70, wall);
+            map.drawLine(1, 30, 5, 2, 5, content);
+        }
+        for (int i = 0; i <= 10; i++) {
+            assertEquals(wall, packedMap.getMaterial(0, i, i));
+        }
+        assertEquals(31, packedMap.getMaterialIndex().count(0, wall, 20, 0, 22, 149));
+        assertSame(content, packedMap.getContent(1, 17, 5));
+        assertSameMaps();
+    }
+
+    public void testFillPolygon() throws Exception {
+        for (Map map : new Map[]{segmentMap, packedMap}) {
+            map.fillPolygon(0, new int[]{0, 0, 20}, new int[]{0, 20, 0}, wall);
+        }
+        assertEquals(21 * 22 / 2, packedMap.getMaterialIndex().count(0, wall));
+        assertSameMaps();
+    }
+
+    public void testFloodFill() throws Exception {
+        for (Map map : new Map[]{segmentMap, packedMap}) {
+            map.fillRectangle(0, 0, 0, 39, 149, floorMaterial);
+            map.drawLine(0, 0, 70, 39, 70, wall);
+            map.drawLine(0, 10, 0, 10, 70, wall);
+            assertEquals(10 * 70, map.floodFill(0, 3, 3, wall));
+            assertEquals(0, map.floodFill(0, 3, 3, wall));
+            assertEquals(40 * 150, map.floodFill(1, 0, 0, content));
+            assertEquals(29 * 70, map.floodFill(0, 39, 0, content));
+        }
+        assertSame(content, packedMap.getContent(0, 11, 0));
+        assertNull(packedMap.getContent(0, 11, 71));
+        assertSameMaps();
+    }
+
+    private void assertSameMaps() {
+        for (int floor = 0; floor < 2; floor++) {
+            for (int row = 0; row < 40; row++) {
+                for (int column = 0; column < 150; column++) {
+                    assertEquals(segmentMap.getMaterial(floor, row, column), packedMap.getMaterial(floor, row, column));
+                    assertSame(segmentMap.getContent(floor, row, column), packedMap.getContent(floor, row, column));
+                }
+            }
+        }
+    }
+}
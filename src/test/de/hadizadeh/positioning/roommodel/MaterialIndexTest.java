@@ -0,0 +1,53 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.MaterialIndex;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.PackedMapStorage;
+import junit.framework.TestCase;
+
+import java.util.BitSet;
+
+public class MaterialIndexTest extends TestCase {
+
+    private Material wall = new Material("wall");
+    private Material stairs = new Material("stairs");
+
+    private PackedMapStorage storage;
+    private MaterialIndex materialIndex;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        storage = new PackedMapStorage(10, 70, 2);
+        for (int column = 0; column < 70; column++) {
+            storage.setMaterial(0, 0, column, wall);
+            storage.setMaterial(0, 9, column, wall);
+        }
+        storage.setMaterial(0, 5, 5, stairs);
+        storage.setMaterial(1, 5, 5, stairs);
+        materialIndex = new MaterialIndex(storage);
+    }
+
+    public void testCount() throws Exception {
+        assertEquals(140, materialIndex.count(0, wall));
+        assertEquals(0, materialIndex.count(1, wall));
+        assertEquals(63, materialIndex.count(0, wall, 0, 1, 3, 63));
+        assertEquals(1, materialIndex.count(1, stairs, 0, 0, 9, 69));
+    }
+
+    public void testUpdate() throws Exception {
+        materialIndex.update(0, 0, 3, wall, stairs);
+        assertEquals(139, materialIndex.count(0, wall));
+        assertEquals(2, materialIndex.count(0, stairs));
+    }
+
+    public void testGetSegments() throws Exception {
+        BitSet stairsOnBothFloors = materialIndex.getSegments(0, stairs);
+        stairsOnBothFloors.and(materialIndex.getSegments(1, stairs));
+        assertEquals(1, stairsOnBothFloors.cardinality());
+        int index = stairsOnBothFloors.nextSetBit(0);
+        assertEquals(5, materialIndex.getRow(index));
+        assertEquals(5, materialIndex.getColumn(index));
+        assertEquals(141, materialIndex.getSegments(0, wall, stairs).cardinality());
+    }
+}
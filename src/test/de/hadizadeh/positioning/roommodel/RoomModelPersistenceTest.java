@@ -0,0 +1,405 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.model.MappingPoint;
+import de.hadizadeh.positioning.roommodel.ContentPositionIndex;
+import de.hadizadeh.positioning.roommodel.Map;
+import de.hadizadeh.positioning.roommodel.RoomModelPersistence;
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.LazyMapStorage;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class RoomModelPersistenceTest extends TestCase {
+
+    private static final String FILENAME = "testdata.roommodel";
+
+    private Material wall = new Material("wall");
+    private Material door = new Material("door");
+    private List<Material> materials = Arrays.asList(wall, door);
+    private ContentElement content = new ContentElement(1);
+
+    private TestPersistence persistence;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        persistence = new TestPersistence();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        new File(FILENAME).delete();
+        new File(FILENAME + RoomModelPersistence.JOURNAL_SUFFIX).delete();
+        super.tearDown();
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        for (RoomModelPersistence.Format format : RoomModelPersistence.Format.values()) {
+            assertSameMap(format);
+        }
+    }
+
+    public void testBinaryFileIsSmaller() throws Exception {
+        Map map = new TestMap(100, 200, 2, 1);
+        map.fillRectangle(0, 0, 0, 99, 199, wall);
+        map.fillRectangle(1, 10, 10, 50, 150, door);
+        persistence.save(FILENAME, map);
+        long textLength = new File(FILENAME).length();
+        persistence.save(FILENAME, map, RoomModelPersistence.Format.BINARY);
+        assertTrue(new File(FILENAME).length() * 100 < textLength);
+        Map loadedMap = persistence.load(FILENAME, materials);
+        assertEquals(wall, loadedMap.getMaterial(0, 99, 199));
+        assertEquals(door, loadedMap.getMaterial(1, 50, 150));
+        assertNull(loadedMap.getMaterial(1, 51, 150));
+    }
+
+    public void testLoadLazily() throws Exception {
+        Map map = new TestMap(20, 30, 3, 2);
+        map.fillRectangle(0, 0, 0, 19, 29, wall);
+        map.fillRectangle(2, 5, 5, 10, 10, door);
+        map.setContent(2, 5, 5, content);
+        persistence.save(FILENAME, map, RoomModelPersistence.Format.BINARY);
+        Map loadedMap = persistence.loadLazily(FILENAME, materials);
+        LazyMapStorage storage = (LazyMapStorage) loadedMap.getStorage();
+        assertEquals(door, loadedMap.getMaterial(2, 10, 10));
+        assertSame(content, loadedMap.getContent(2, 5, 5));
+        assertTrue(storage.isFloorLoaded(2));
+        assertFalse(storage.isFloorLoaded(0));
+        for (int floor = 0; floor < 3; floor++) {
+            for (int row = 0; row < 20; row++) {
+                for (int column = 0; column < 30; column++) {
+                    assertEquals(map.getMaterial(floor, row, column), loadedMap.getMaterial(floor, row, column));
+                    assertSame(map.getContent(floor, row, column), loadedMap.getContent(floor, row, column));
+                }
+            }
+        }
+
+        persistence.indexed = true;
+        loadedMap = persistence.loadLazily(FILENAME, materials);
+        ContentElement movedContent = new ContentElement(2);
+        persistence.removePosition(new MappingPoint(5, 5, 4));
+        persistence.addPosition(movedContent, new MappingPoint(6, 5, 4));
+        assertNull(loadedMap.getContent(2, 5, 5));
+        assertSame(movedContent, loadedMap.getContent(2, 5, 6));
+        persistence.indexed = false;
+
+        RandomAccessFile file = new RandomAccessFile(FILENAME, "rw");
+        file.seek(file.length() - 1);
+        int lastByte = file.read();
+        file.seek(file.length() - 1);
+        file.write(lastByte ^ 1);
+        file.close();
+        try {
+            persistence.load(FILENAME, materials);
+            fail();
+        } catch (IOException e) {
+        }
+        loadedMap = persistence.loadLazily(FILENAME, materials);
+        assertEquals(wall, loadedMap.getMaterial(0, 0, 0));
+        try {
+            loadedMap.getMaterial(2, 0, 0);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    public void testLoadFloorWhilePersistenceIsLocked() throws Exception {
+        Map map = new TestMap(20, 30, 2, 1);
+        map.setMaterial(1, 3, 4, door);
+        map.setContent(1, 3, 4, content);
+        persistence.save(FILENAME, map, RoomModelPersistence.Format.BINARY);
+        final Map loadedMap = persistence.loadLazily(FILENAME, materials);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ContentElement> loadedContent;
+            synchronized (persistence) {
+                loadedContent = executor.submit(new Callable<ContentElement>() {
+                    @Override
+                    public ContentElement call() {
+                        return loadedMap.getContent(1, 3, 4);
+                    }
+                });
+                assertSame(content, loadedContent.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertSameMap(RoomModelPersistence.Format format) throws Exception {
+        Map map = new TestMap(4, 5, 3, 2);
+        map.setMaterial(0, 0, 0, wall);
+        map.setMaterial(2, 3, 4, door);
+        map.setMaterial(1, 2, 1, wall);
+        map.setMaterial(1, 2, 2, new Material("unknown"));
+        map.setContent(1, 2, 1, content);
+        persistence.save(FILENAME, map, format);
+        map.setMaterial(1, 2, 2, null);
+        Map loadedMap = persistence.load(FILENAME, materials);
+        assertEquals(4, loadedMap.getRows());
+        assertEquals(5, loadedMap.getColumns());
+        assertEquals(3, loadedMap.getFloors());
+        assertEquals(2, loadedMap.getFloorHeight());
+        for (int floor = 0; floor < 3; floor++) {
+            for (int row = 0; row < 4; row++) {
+                for (int column = 0; column < 5; column++) {
+                    assertEquals(map.getMaterial(floor, row, column), loadedMap.getMaterial(floor, row, column));
+                    assertSame(map.getContent(floor, row, column), loadedMap.getContent(floor, row, column));
+                }
+            }
+        }
+    }
+
+    public void testSparseText() throws Exception {
+        Map map = new TestMap(100, 200, 2, 3);
+        map.fillRectangle(1, 10, 10, 19, 19, door);
+        map.setContent(0, 99, 199, content);
+        persistence.save(FILENAME, map);
+        long textLength = new File(FILENAME).length();
+        persistence.save(FILENAME, map, RoomModelPersistence.Format.SPARSE_TEXT);
+        assertTrue(new File(FILENAME).length() * 100 < textLength);
+        Map loadedMap = persistence.load(FILENAME, materials);
+        assertEquals(100, loadedMap.getRows());
+        assertEquals(200, loadedMap.getColumns());
+        assertEquals(2, loadedMap.getFloors());
+        assertEquals(3, loadedMap.getFloorHeight());
+        assertEquals(door, loadedMap.getMaterial(1, 19, 19));
+        assertNull(loadedMap.getMaterial(1, 20, 19));
+        assertSame(content, loadedMap.getContent(0, 99, 199));
+    }
+
+    public void testIncrementalSave() throws Exception {
+        File file = new File(FILENAME);
+        File journal = new File(FILENAME + RoomModelPersistence.JOURNAL_SUFFIX);
+        persistence.setIncrementalSaving(true);
+        Map map = new TestMap(40, 50, 2, 1);
+        map.fillRectangle(0, 0, 0, 39, 49, wall);
+        map.setContent(1, 5, 5, content);
+        persistence.save(FILENAME, map);
+        long length = file.length();
+        assertFalse(journal.exists());
+        map.setMaterial(1, 3, 4, door);
+        map.fillRectangle(0, 10, 10, 12, 12, (Material) null);
+        map.setContent(1, 5, 5, null);
+        map.setContent(0, 20, 20, content);
+        persistence.save(FILENAME, map);
+        assertEquals(length, file.length());
+        assertTrue(journal.length() > 0);
+        map.setMaterial(1, 3, 4, wall);
+        persistence.save(FILENAME, map);
+        assertSameMap(map, persistence.load(FILENAME, materials));
+        assertNull(persistence.getContent(new MappingPoint(5, 5, 1)));
+
+        Map loadedMap = persistence.load(FILENAME, materials);
+        loadedMap.setMaterial(0, 39, 49, null);
+        persistence.save(FILENAME, loadedMap);
+        assertEquals(length, file.length());
+        assertSameMap(loadedMap, persistence.load(FILENAME, materials));
+
+        loadedMap.addFloor();
+        persistence.save(FILENAME, loadedMap);
+        assertFalse(journal.exists());
+        assertSameMap(loadedMap, persistence.load(FILENAME, materials));
+    }
+
+    public void testSaveAsync() throws Exception {
+        persistence.setIncrementalSaving(true);
+        Map map = new TestMap(70, 80, 2, 1);
+        map.fillRectangle(0, 0, 0, 69, 79, wall);
+        map.setContent(1, 2, 3, content);
+        persistence.saveAsync(FILENAME, map, RoomModelPersistence.Format.TEXT).get();
+        assertSame(Thread.currentThread(), persistence.positionThread);
+        map.setMaterial(1, 1, 1, door);
+        Map savedMap = new TestMap(map.getStorage().snapshot(), 1);
+        Future<Void> future = persistence.saveAsync(FILENAME, map, RoomModelPersistence.Format.TEXT);
+        map.fillRectangle(0, 0, 0, 69, 79, door);
+        map.addFloor();
+        future.get();
+        assertSameMap(savedMap, persistence.load(FILENAME, materials));
+        persistence.saveAsync(FILENAME, map, RoomModelPersistence.Format.BINARY).get();
+        assertSameMap(map, persistence.load(FILENAME, materials));
+    }
+
+    public void testRead() throws Exception {
+        persistence.setIncrementalSaving(true);
+        final Map map = new TestMap(30, 40, 3, 2);
+        map.fillRectangle(1, 0, 0, 29, 39, wall);
+        map.setContent(2, 4, 5, content);
+        for (RoomModelPersistence.Format format : RoomModelPersistence.Format.values()) {
+            map.setChangeSet(null);
+            persistence.save(FILENAME, map, format);
+            map.setMaterial(0, 0, 0, door);
+            map.setMaterial(2, 29, 39, door);
+            map.setMaterial(1, 5, 5, null);
+            persistence.save(FILENAME, map, format);
+            final int[] visited = new int[]{0, -1};
+            persistence.read(FILENAME, materials, new Map.SegmentVisitor() {
+                @Override
+                public void visit(int floor, int row, int column, Material material, ContentElement content) {
+                    assertTrue(floor * 30 * 40 + row * 40 + column > visited[1]);
+                    visited[1] = floor * 30 * 40 + row * 40 + column;
+                    assertEquals(map.getMaterial(floor, row, column), material);
+                    assertSame(map.getContent(floor, row, column), content);
+                    visited[0]++;
+                }
+            });
+            if (format == RoomModelPersistence.Format.SPARSE_TEXT) {
+                assertEquals(30 * 40 + 1 + 2, visited[0]);
+            } else {
+                assertEquals(3 * 30 * 40, visited[0]);
+            }
+            map.setMaterial(0, 0, 0, null);
+            map.setMaterial(2, 29, 39, null);
+            map.setMaterial(1, 5, 5, wall);
+        }
+    }
+
+    public void testJournalCompaction() throws Exception {
+        File journal = new File(FILENAME + RoomModelPersistence.JOURNAL_SUFFIX);
+        persistence.setIncrementalSaving(true);
+        persistence.setJournalCompactionSize(100);
+        Map map = new TestMap(40, 50, 1, 1);
+        persistence.save(FILENAME, map);
+        map.fillRectangle(0, 0, 0, 9, 9, wall);
+        persistence.save(FILENAME, map);
+        assertTrue(journal.length() > 100);
+        map.setMaterial(0, 20, 20, door);
+        persistence.save(FILENAME, map);
+        assertFalse(journal.exists());
+        assertSameMap(map, persistence.load(FILENAME, materials));
+    }
+
+    private void assertSameMap(Map map, Map loadedMap) {
+        assertEquals(map.getFloors(), loadedMap.getFloors());
+        for (int floor = 0; floor < map.getFloors(); floor++) {
+            for (int row = 0; row < map.getRows(); row++) {
+                for (int column = 0; column < map.getColumns(); column++) {
+                    assertEquals(map.getMaterial(floor, row, column), loadedMap.getMaterial(floor, row, column));
+                    assertSame(map.getContent(floor, row, column), loadedMap.getContent(floor, row, column));
+                }
+            }
+        }
+    }
+
+    public void testLoadWithContentIndex() throws Exception {
+        persistence.indexed = true;
+        for (RoomModelPersistence.Format format : RoomModelPersistence.Format.values()) {
+            assertSameMap(format);
+        }
+        assertEquals(0, persistence.lookups);
+    }
+
+    public void testParallelLoad() throws Exception {
+        Map map = new TestMap(150, 90, 3, 2);
+        map.fillRectangle(0, 0, 0, 149, 89, wall);
+        map.fillRectangle(1, 10, 5, 140, 60, door);
+        map.drawLine(2, 0, 0, 149, 89, wall);
+        map.setContent(1, 70, 30, content);
+        map.setContent(2, 149, 89, content);
+        persistence.save(FILENAME, map);
+        Map sequentialMap = persistence.load(FILENAME, materials);
+        persistence.setForkJoinPool(new ForkJoinPool(4));
+        Map parallelMap = persistence.loadTextMapped(FILENAME, materials);
+        for (int floor = 0; floor < 3; floor++) {
+            for (int row = 0; row < 150; row++) {
+                for (int column = 0; column < 90; column++) {
+                    assertEquals(sequentialMap.getMaterial(floor, row, column), parallelMap.getMaterial(floor, row, column));
+                    assertSame(sequentialMap.getContent(floor, row, column), parallelMap.getContent(floor, row, column));
+                }
+            }
+        }
+        assertSame(content, parallelMap.getContent(2, 149, 89));
+    }
+
+    public void testLoadWithoutSizeHeader() throws Exception {
+        FileWriter writer = new FileWriter(FILENAME);
+        writer.write("x\ty\tz\tmaterial\r\n");
+        for (int z = 0; z <= 6; z += 3) {
+            for (int row = 0; row < 2; row++) {
+                for (int column = 0; column < 3; column++) {
+                    writer.write(column + "\t" + row + "\t" + z + "\t" + (column == row ? "wall" : "") + "\r\n");
+                }
+            }
+        }
+        writer.close();
+        Map map = persistence.load(FILENAME, materials);
+        assertEquals(2, map.getRows());
+        assertEquals(3, map.getColumns());
+        assertEquals(3, map.getFloors());
+        assertEquals(3, map.getFloorHeight());
+        assertEquals(wall, map.getMaterial(2, 1, 1));
+        assertNull(map.getMaterial(2, 1, 2));
+    }
+
+    public void testLoadSingleFloorWithoutSizeHeader() throws Exception {
+        FileWriter writer = new FileWriter(FILENAME);
+        writer.write("x\ty\tz\tmaterial\n0\t0\t0\tdoor\n1\t0\t0\n0\t1\t0\tunknown\n1\t1\t0\twall");
+        writer.close();
+        Map map = persistence.load(FILENAME, materials);
+        assertEquals(1, map.getFloors());
+        assertEquals(1, map.getFloorHeight());
+        assertEquals(door, map.getMaterial(0, 0, 0));
+        assertNull(map.getMaterial(0, 1, 0));
+        assertEquals(wall, map.getMaterial(0, 1, 1));
+    }
+
+    private static class TestPersistence extends RoomModelPersistence {
+        private HashMap<String, ContentElement> positions = new HashMap<String, ContentElement>();
+        private boolean indexed;
+        private int lookups;
+        private Thread positionThread;
+
+        protected void removeAllPositions() {
+            positions.clear();
+        }
+
+        protected void addPosition(ContentElement content, MappingPoint mappingPoint) {
+            positionThread = Thread.currentThread();
+            positions.put(key(mappingPoint), content);
+        }
+
+        protected boolean removePosition(MappingPoint mappingPoint) {
+            positions.remove(key(mappingPoint));
+            return true;
+        }
+
+        protected ContentElement getContent(MappingPoint mappingPoint) {
+            lookups++;
+            return positions.get(key(mappingPoint));
+        }
+
+        protected ContentPositionIndex createContentIndex() {
+            if (!indexed) {
+                return null;
+            }
+            ContentPositionIndex index = new ContentPositionIndex();
+            for (java.util.Map.Entry<String, ContentElement> position : positions.entrySet()) {
+                String[] coordinates = position.getKey().split("_");
+                index.put(Integer.parseInt(coordinates[0]), Integer.parseInt(coordinates[1]), Integer.parseInt(coordinates[2]), position.getValue());
+            }
+            return index;
+        }
+
+        protected Map createMap(int rows, int columns, int floors, int floorHeight) {
+            return new TestMap(rows, columns, floors, floorHeight);
+        }
+
+        private String key(MappingPoint mappingPoint) {
+            return mappingPoint.getX() + "_" + mappingPoint.getY() + "_" + mappingPoint.getZ();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.MaterialNameIndex;
+import de.hadizadeh.positioning.roommodel.RoomModelTextReader;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class RoomModelTextReaderTest extends TestCase {
+
+    private Material wall = new Material("wall");
+    private Material door = new Material("door");
+    private MaterialNameIndex materials = new MaterialNameIndex(Arrays.asList(wall, door), RoomModelTextReader.CHARSET);
+
+    private byte[] file;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        StringBuilder builder = new StringBuilder("x\ty\tz\tmaterial\r\n");
+        for (int i = 0; i < 20000; i++) {
+            builder.append(i).append('\t').append(-i).append('\t').append(i % 7).append('\t').append(i % 3 == 0 ? "wall" : i % 3 == 1 ? "door" : "").append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        file = builder.append("\n").toString().getBytes(RoomModelTextReader.CHARSET);
+    }
+
+    public void testStreamAndBuffer() throws Exception {
+        assertLines(new RoomModelTextReader(new ByteArrayInputStream(file)));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(file.length);
+        buffer.put(file).flip();
+        assertLines(new RoomModelTextReader(buffer));
+    }
+
+    public void testCorruptedNumber() throws Exception {
+        RoomModelTextReader reader = new RoomModelTextReader(ByteBuffer.wrap("1\tx\t0\twall".getBytes(RoomModelTextReader.CHARSET)));
+        assertTrue(reader.nextLine());
+        assertEquals(1, reader.nextInt());
+        try {
+            reader.nextInt();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("1\tx\t0\twall"));
+        }
+    }
+
+    private void assertLines(RoomModelTextReader reader) throws Exception {
+        assertTrue(reader.nextLine());
+        assertEquals("x\ty\tz\tmaterial", reader.restOfLine());
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(reader.nextLine());
+            assertEquals(i, reader.nextInt());
+            assertEquals(-i, reader.nextInt());
+            assertEquals(i % 7, reader.nextInt());
+            assertSame(i % 3 == 0 ? wall : i % 3 == 1 ? door : null, reader.nextMaterial(materials));
+            assertFalse(reader.hasMoreFields());
+        }
+        assertFalse(reader.nextLine());
+        reader.close();
+    }
+}
@@ -0,0 +1,41 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.MaterialNameIndex;
+import de.hadizadeh.positioning.roommodel.RoomModelTextReader;
+import de.hadizadeh.positioning.roommodel.RoomModelTextWriter;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+public class RoomModelTextWriterTest extends TestCase {
+
+    private Material wall = new Material("wall");
+    private Material door = new Material("door");
+    private MaterialNameIndex materials = new MaterialNameIndex(Arrays.asList(wall, door), RoomModelTextReader.CHARSET);
+
+    public void testWriteAndRead() throws Exception {
+        int[] numbers = new int[]{0, 7, 10, -1, 99999, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        RoomModelTextWriter writer = new RoomModelTextWriter(outputStream);
+        writer.write("x\ty\tz\tmaterial");
+        for (int i = 0; i < 30000; i++) {
+            writer.newLine();
+            writer.writeSegment(i, numbers[i % numbers.length], -i, i % 3 == 0 ? wall : i % 3 == 1 ? door : null);
+        }
+        writer.close();
+        RoomModelTextReader reader = new RoomModelTextReader(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertTrue(reader.nextLine());
+        assertEquals("x\ty\tz\tmaterial", reader.restOfLine());
+        for (int i = 0; i < 30000; i++) {
+            assertTrue(reader.nextLine());
+            assertEquals(i, reader.nextInt());
+            assertEquals(numbers[i % numbers.length], reader.nextInt());
+            assertEquals(-i, reader.nextInt());
+            assertSame(i % 3 == 0 ? wall : i % 3 == 1 ? door : null, reader.nextMaterial(materials));
+        }
+        assertFalse(reader.nextLine());
+    }
+}
@@ -0,0 +1,98 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.RoomSegmentation;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.PackedMapStorage;
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Random;
+
+public class RoomSegmentationTest extends TestCase {
+
+    private Material wall = new Material("wall");
+    private Material door = new Material("door");
+    private Material furniture = new Material("furniture");
+
+    private PackedMapStorage storage;
+    private RoomSegmentation roomSegmentation;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        storage = new PackedMapStorage(12, 20, 2);
+        for (int row = 0; row < 12; row++) {
+            storage.setMaterial(0, row, 10, wall);
+        }
+        for (int column = 0; column < 10; column++) {
+            storage.setMaterial(0, 6, column, wall);
+        }
+        storage.setMaterial(0, 3, 3, furniture);
+        roomSegmentation = new RoomSegmentation(storage);
+    }
+
+    public void testLabels() throws Exception {
+        assertEquals(3, roomSegmentation.getRoomCount(0));
+        assertEquals(1, roomSegmentation.getRoomCount(1));
+        assertEquals(0, roomSegmentation.getRoom(0, 6, 2));
+        assertEquals(roomSegmentation.getRoom(0, 0, 0), roomSegmentation.getRoom(0, 3, 3));
+        assertFalse(roomSegmentation.getRoom(0, 0, 0) == roomSegmentation.getRoom(0, 7, 0));
+        assertEquals(60, roomSegmentation.getRoomSize(0, roomSegmentation.getRoom(0, 0, 0)));
+        assertEquals(108, roomSegmentation.getRoomSegments(0, roomSegmentation.getRoom(0, 0, 19)).cardinality());
+    }
+
+    public void testSplitAndMerge() throws Exception {
+        change(0, 6, 4, null);
+        assertEquals(2, roomSegmentation.getRoomCount(0));
+        assertEquals(roomSegmentation.getRoom(0, 0, 0), roomSegmentation.getRoom(0, 11, 0));
+        for (int row = 0; row < 12; row++) {
+            change(1, row, 5, door);
+        }
+        assertEquals(2, roomSegmentation.getRoomCount(1));
+        assertEquals(60, roomSegmentation.getRoomSize(1, roomSegmentation.getRoom(1, 0, 0)));
+        change(1, 4, 5, furniture);
+        assertEquals(1, roomSegmentation.getRoomCount(1));
+    }
+
+    public void testIncrementalUpdatesMatchFullLabeling() throws Exception {
+        Random random = new Random(3);
+        Material[] materials = new Material[]{wall, wall, door, furniture, null};
+        for (int i = 0; i < 3000; i++) {
+            change(random.nextInt(2), random.nextInt(12), random.nextInt(20), materials[random.nextInt(materials.length)]);
+            if (i % 100 == 0) {
+                assertSameRooms(new RoomSegmentation(storage));
+            }
+        }
+        assertSameRooms(new RoomSegmentation(storage));
+    }
+
+    private void change(int floor, int row, int column, Material material) {
+        Material oldMaterial = storage.getMaterial(floor, row, column);
+        roomSegmentation.update(floor, row, column, oldMaterial, material);
+        storage.setMaterial(floor, row, column, material);
+    }
+
+    private void assertSameRooms(RoomSegmentation expected) {
+        for (int floor = 0; floor < 2; floor++) {
+            assertEquals(expected.getRoomCount(floor), roomSegmentation.getRoomCount(floor));
+            HashMap<Integer, Integer> rooms = new HashMap<Integer, Integer>();
+            for (int row = 0; row < 12; row++) {
+                for (int column = 0; column < 20; column++) {
+                    int expectedRoom = expected.getRoom(floor, row, column);
+                    int room = roomSegmentation.getRoom(floor, row, column);
+                    assertEquals(expectedRoom == 0, room == 0);
+                    if (room != 0) {
+                        Integer mappedRoom = rooms.get(expectedRoom);
+                        if (mappedRoom == null) {
+                            assertFalse(rooms.containsValue(room));
+                            rooms.put(expectedRoom, room);
+                        } else {
+                            assertEquals(mappedRoom.intValue(), room);
+                        }
+                        assertEquals(expected.getRoomSize(floor, expectedRoom), roomSegmentation.getRoomSize(floor, room));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.Map;
+import de.hadizadeh.positioning.roommodel.model.MapSegment;
+import de.hadizadeh.positioning.roommodel.storage.MapStorage;
+
+public class TestMap extends Map {
+    public TestMap() {
+        this(1, 1, 1);
+    }
+
+    public TestMap(int rows, int columns, int floors) {
+        this(rows, columns, floors, 1);
+    }
+
+    public TestMap(int rows, int columns, int floors, int floorHeight) {
+        super(rows, columns, floors, floorHeight);
+    }
+
+    public TestMap(MapStorage storage) {
+        this(storage, 1);
+    }
+
+    public TestMap(MapStorage storage, int floorHeight) {
+        super(storage, floorHeight);
+    }
+
+    @Override
+    public void renderDirty(Object canvas, int startRow, int startColumn, int visibleRows, int visibleColumns) {
+        super.renderDirty(canvas, startRow, startColumn, visibleRows, visibleColumns);
+    }
+
+    public Object getCanvas() {
+        return null;
+    }
+
+    public void render() {
+    }
+
+    public void render(int startRow, int startColumn, int visibleRows, int visibleColumns) {
+    }
+
+    public void render(Object mapCanvas, int startRow, int startColumn, int visibleRows, int visibleColumns, Object currentXLb, Object currentYLb, Object currentMaterialLb, Object currentContentLb, Object resourceBundle) {
+    }
+
+    public MapSegment createMapSegment() {
+        return new TestMapSegment();
+    }
+
+    public MapSegment copyMapSegment(MapSegment mapSegment) {
+        return new TestMapSegment(mapSegment);
+    }
+}
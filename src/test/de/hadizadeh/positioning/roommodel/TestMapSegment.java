@@ -0,0 +1,21 @@
+package test.de.hadizadeh.positioning.roommodel;
+
+import de.hadizadeh.positioning.roommodel.model.MapSegment;
+
+import java.util.List;
+
+public class TestMapSegment extends MapSegment {
+    public TestMapSegment() {
+    }
+
+    public TestMapSegment(MapSegment copy) {
+        super(copy);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void render(Object graphic, int originalRow, int originalColumn, int renderRow, int renderColumn) {
+        if (graphic instanceof List) {
+            ((List<int[]>) graphic).add(new int[]{originalRow, originalColumn});
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package test.de.hadizadeh.positioning.roommodel.storage;
+
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.MappedMapStorage;
+import de.hadizadeh.positioning.roommodel.storage.PackedMapStorage;
+import junit.framework.TestCase;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class MappedMapStorageTest extends TestCase {
+
+    private Material wall = new Material("wall");
+    private Material door = new Material("door");
+    private ContentElement content = new ContentElement(3);
+    private File file = new File("testdata.map");
+
+    private MappedMapStorage mappedStorage;
+    private PackedMapStorage packedStorage;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mappedStorage = MappedMapStorage.create(file, 4, 6, 2);
+        packedStorage = new PackedMapStorage(4, 6, 2);
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 6; column++) {
+                Material material = (row + column) % 2 == 0 ? wall : door;
+                mappedStorage.setMaterial(row % 2, row, column, material);
+                packedStorage.setMaterial(row % 2, row, column, material);
+            }
+        }
+        mappedStorage.setContent(1, 3, 5, content);
+        packedStorage.setContent(1, 3, 5, content);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mappedStorage.close();
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testStructuralChanges() throws Exception {
+        int[][] changes = new int[][]{{1, 3, 0}, {0, 2, 0}, {1, 2, 2}, {0, 1, 3}};
+        for (int[] change : changes) {
+            mappedStorage.changeSize(change[0] == 1, change[1], change[2]);
+            packedStorage.changeSize(change[0] == 1, change[1], change[2]);
+            assertSameContent();
+        }
+        mappedStorage.addFloor(1);
+        packedStorage.addFloor(1);
+        mappedStorage.removeFloor(0);
+        packedStorage.removeFloor(0);
+        assertSameContent();
+    }
+
+    public void testChangeSizeWritesCompleteFile() throws Exception {
+        mappedStorage.changeSize(true, 2, 2);
+        packedStorage.changeSize(true, 2, 2);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        MappedMapStorage reopenedStorage = MappedMapStorage.open(file, Arrays.asList(wall, door), Collections.singletonList(content));
+        try {
+            assertEquals(8, reopenedStorage.getColumns());
+            for (int row = 0; row < 4; row++) {
+                for (int column = 0; column < 8; column++) {
+                    assertEquals(packedStorage.getMaterial(row % 2, row, column), reopenedStorage.getMaterial(row % 2, row, column));
+                    assertSame(packedStorage.getContent(row % 2, row, column), reopenedStorage.getContent(row % 2, row, column));
+                }
+            }
+            assertSame(content, reopenedStorage.getContent(1, 3, 7));
+        } finally {
+            reopenedStorage.close();
+        }
+        mappedStorage.setMaterial(0, 0, 7, wall);
+        packedStorage.setMaterial(0, 0, 7, wall);
+        assertSameContent();
+    }
+
+    public void testReopen() throws Exception {
+        mappedStorage.setFloorHeight(3);
+        mappedStorage.close();
+        mappedStorage = MappedMapStorage.open(file, Arrays.asList(door, wall), Collections.singletonList(content));
+        assertEquals(3, mappedStorage.getFloorHeight());
+        assertSameContent();
+    }
+
+    public void testContentNumbers() throws Exception {
+        for (int contentNumber : new int[]{0, -1}) {
+            try {
+                mappedStorage.setContent(0, 0, 0, new ContentElement(contentNumber));
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        ContentElement sameNumber = new ContentElement(3);
+        mappedStorage.setContent(0, 1, 1, sameNumber);
+        assertSame(sameNumber, mappedStorage.getContent(1, 3, 5));
+    }
+
+    public void testOpenTruncatedFile() throws Exception {
+        mappedStorage.close();
+        RandomAccessFile truncatedFile = new RandomAccessFile(file, "rw");
+        truncatedFile.setLength(truncatedFile.length() - 2);
+        truncatedFile.close();
+        try {
+            MappedMapStorage.open(file, null, null);
+            fail();
+        } catch (EOFException e) {
+        }
+        truncatedFile = new RandomAccessFile(file, "rw");
+        truncatedFile.setLength(8);
+        truncatedFile.close();
+        try {
+            MappedMapStorage.open(file, null, null);
+            fail();
+        } catch (EOFException e) {
+        }
+        mappedStorage = MappedMapStorage.create(file, 1, 1, 1);
+    }
+
+    private void assertSameContent() {
+        assertEquals(packedStorage.getFloors(), mappedStorage.getFloors());
+        assertEquals(packedStorage.getRows(), mappedStorage.getRows());
+        assertEquals(packedStorage.getColumns(), mappedStorage.getColumns());
+        for (int floor = 0; floor < packedStorage.getFloors(); floor++) {
+            for (int row = 0; row < packedStorage.getRows(); row++) {
+                for (int column = 0; column < packedStorage.getColumns(); column++) {
+                    assertEquals(packedStorage.getMaterial(floor, row, column), mappedStorage.getMaterial(floor, row, column));
+                    assertSame(packedStorage.getContent(floor, row, column), mappedStorage.getContent(floor, row, column));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package test.de.hadizadeh.positioning.roommodel.storage;
+
+import de.hadizadeh.positioning.roommodel.model.ContentElement;
+import de.hadizadeh.positioning.roommodel.model.Material;
+import de.hadizadeh.positioning.roommodel.storage.MapStorage;
+import de.hadizadeh.positioning.roommodel.storage.PackedMapStorage;
+import de.hadizadeh.positioning.roommodel.storage.SegmentMapStorage;
+import junit.framework.TestCase;
+import test.de.hadizadeh.positioning.roommodel.TestMap;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class PackedMapStorageTest extends TestCase {
+
+    private Material wall = new Material("wall");
+    private Material door = new Material("door");
+    private ContentElement content = new ContentElement(1);
+
+    private SegmentMapStorage segmentStorage;
+    private PackedMapStorage packedStorage;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        segmentStorage = new SegmentMapStorage(new TestMap(), 5, 7, 2);
+        packedStorage = new PackedMapStorage(5, 7, 2);
+        for (MapStorage storage : new MapStorage[]{segmentStorage, packedStorage}) {
+            for (int floor = 0; floor < 2; floor++) {
+                for (int row = 0; row < 5; row++) {
+                    for (int column = 0; column < 7; column++) {
+                        if ((row + column + floor) % 3 == 0) {
+                            storage.setMaterial(floor, row, column, wall);
+                        } else if ((row * column) % 4 == 1) {
+                            storage.setMaterial(floor, row, column, door);
+                        }
+                    }
+                }
+            }
+            storage.setContent(1, 2, 3, content);
+        }
+    }
+
+    public void testGetAndSet() throws Exception {
+        assertSameContent();
+        packedStorage.setMaterial(0, 4, 6, null);
+        assertNull(packedStorage.getMaterial(0, 4, 6));
+        assertSame(content, packedStorage.getContent(1, 2, 3));
+    }
+
+    public void testChangeSize() throws Exception {
+        int[][] changes = new int[][]{{1, 3, 0}, {0, 2, 0}, {1, 2, 2}, {0, 1, 2}, {1, 4, 1}, {0, 3, 1}, {1, 1, 3}, {0, 2, 3}};
+        for (int[] change : changes) {
+            segmentStorage.changeSize(change[0] == 1, change[1], change[2]);
+            packedStorage.changeSize(change[0] == 1, change[1], change[2]);
+            assertSameContent();
+        }
+    }
+
+    public void testChangeSizeAcrossTiles() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 40; i++) {
+            boolean add = random.nextBoolean() || packedStorage.getRows() < 80 || packedStorage.getColumns() < 80;
+            int amount = 1 + random.nextInt(70);
+            int position = random.nextInt(4);
+            segmentStorage.changeSize(add, amount, position);
+            packedStorage.changeSize(add, amount, position);
+            int row = random.nextInt(packedStorage.getRows());
+            int column = random.nextInt(packedStorage.getColumns());
+            segmentStorage.setMaterial(i % 2, row, column, wall);
+            packedStorage.setMaterial(i % 2, row, column, wall);
+            assertSameContent();
+        }
+    }
+
+    public void testFloors() throws Exception {
+        segmentStorage.addFloor(1);
+        packedStorage.addFloor(1);
+        segmentStorage.addFloor(-1);
+        packedStorage.addFloor(-1);
+        assertSameContent();
+        packedStorage.setMaterial(2, 0, 2, door);
+        assertEquals(wall, packedStorage.getMaterial(1, 0, 2));
+        segmentStorage.setMaterial(2, 0, 2, door);
+        segmentStorage.removeFloor(1);
+        packedStorage.removeFloor(1);
+        assertSameContent();
+    }
+
+    public void testCopiedFloorsAreIndependent() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            segmentStorage.addFloor(0);
+            packedStorage.addFloor(0);
+        }
+        segmentStorage.setMaterial(3, 1, 1, door);
+        packedStorage.setMaterial(3, 1, 1, door);
+        segmentStorage.setMaterial(0, 1, 2, null);
+        packedStorage.setMaterial(0, 1, 2, null);
+        segmentStorage.changeSize(false, 2, 0);
+        packedStorage.changeSize(false, 2, 0);
+        segmentStorage.removeFloor(0);
+        packedStorage.removeFloor(0);
+        segmentStorage.setMaterial(2, 0, 0, wall);
+        packedStorage.setMaterial(2, 0, 0, wall);
+        assertSameContent();
+    }
+
+    public void testSnapshots() throws Exception {
+        MapStorage segmentSnapshot = segmentStorage.snapshot();
+        MapStorage packedSnapshot = packedStorage.snapshot();
+        for (MapStorage storage : new MapStorage[]{segmentStorage, packedStorage}) {
+            storage.setMaterial(0, 0, 0, door);
+            storage.setContent(1, 2, 3, null);
+            storage.changeSize(true, 3, 2);
+            storage.setMaterial(1, 0, 0, door);
+        }
+        assertSameContent();
+        for (MapStorage snapshot : new MapStorage[]{segmentSnapshot, packedSnapshot}) {
+            assertEquals(5, snapshot.getRows());
+            assertEquals(7, snapshot.getColumns());
+            assertEquals(wall, snapshot.getMaterial(0, 0, 0));
+            assertSame(content, snapshot.getContent(1, 2, 3));
+            for (int floor = 0; floor < 2; floor++) {
+                for (int row = 0; row < 5; row++) {
+                    for (int column = 0; column < 7; column++) {
+                        assertEquals(segmentSnapshot.getMaterial(floor, row, column), packedSnapshot.getMaterial(floor, row, column));
+                    }
+                }
+            }
+        }
+        packedSnapshot.release();
+        packedStorage.setMaterial(0, 0, 1, door);
+        assertEquals(door, packedStorage.getMaterial(0, 0, 1));
+    }
+
+    public void testParallelBulkOperations() throws Exception {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        segmentStorage = new SegmentMapStorage(new TestMap(), 300, 250, 3, forkJoinPool);
+        packedStorage = new PackedMapStorage(300, 250, 3);
+        packedStorage.setForkJoinPool(forkJoinPool);
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            int floor = random.nextInt(3);
+            int row = random.nextInt(300);
+            int column = random.nextInt(250);
+            segmentStorage.setMaterial(floor, row, column, wall);
+            packedStorage.setMaterial(floor, row, column, wall);
+        }
+        int[][] changes = new int[][]{{1, 70, 0}, {0, 5, 1}, {1, 33, 2}, {0, 64, 3}, {0, 90, 0}};
+        for (int[] change : changes) {
+            segmentStorage.changeSize(change[0] == 1, change[1], change[2]);
+            packedStorage.changeSize(change[0] == 1, change[1], change[2]);
+            assertSameContent();
+        }
+        segmentStorage.addFloor(1);
+        packedStorage.addFloor(1);
+        assertSameContent();
+        forkJoinPool.shutdown();
+    }
+
+    private void assertSameContent() {
+        assertEquals(segmentStorage.getFloors(), packedStorage.getFloors());
+        assertEquals(segmentStorage.getRows(), packedStorage.getRows());
+        assertEquals(segmentStorage.getColumns(), packedStorage.getColumns());
+        for (int floor = 0; floor < segmentStorage.getFloors(); floor++) {
+            for (int row = 0; row < segmentStorage.getRows(); row++) {
+                for (int column = 0; column < segmentStorage.getColumns(); column++) {
+                    assertEquals(segmentStorage.getMaterial(floor, row, column), packedStorage.getMaterial(floor, row, column));
+                    assertSame(segmentStorage.getContent(floor, row, column), packedStorage.getContent(floor, row, column));
+                }
+            }
+        }
+    }
+}